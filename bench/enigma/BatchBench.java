@@ -0,0 +1,87 @@
+package enigma;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmarks of Batch.convert, converting one message on many lanes
+ *  with the scalar and (where available) vector engines.  Results are
+ *  per message; divide by length times lanes for the cost per character
+ *  per lane.  The forked JVMs add the Vector API module.
+ *  @author Edan Bash
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class BatchBench {
+
+    /** Number of lanes. */
+    @Param({"16", "1024"})
+    public int lanes;
+
+    /** Engine: "scalar" for Batch, "vector" for Batch.create. */
+    @Param({"scalar", "vector"})
+    public String engine;
+
+    /** Set up the batch and message, with a distinct setting per lane. */
+    @Setup
+    public void setUp() {
+        Machine machine = BenchUtils.machine(SIZE, SEED);
+        _batch = engine.equals("vector") ? Batch.create(machine, lanes)
+            : new Batch(machine, lanes);
+        int[] settings = new int[_batch.slots()];
+        for (int l = 0; l < lanes; l += 1) {
+            int k = l;
+            for (int j = settings.length - 1; j >= 1; j -= 1) {
+                settings[j] = k % SIZE;
+                k /= SIZE;
+            }
+            _batch.set(l, settings);
+        }
+        String message = BenchUtils.message(SIZE, LENGTH, SEED);
+        _indices = new int[LENGTH];
+        for (int i = 0; i < LENGTH; i += 1) {
+            _indices[i] = machine.alphabet().toInt(message.charAt(i));
+        }
+        _result = new int[LENGTH * lanes];
+    }
+
+    /** Convert the message on every lane. */
+    @Benchmark
+    public int[] convert() {
+        _batch.convert(_indices, 0, LENGTH, _result);
+        return _result;
+    }
+
+    /** Seed for generated machines and messages. */
+    private static final long SEED = 61;
+
+    /** Size of the alphabet. */
+    private static final int SIZE = 26;
+
+    /** Number of characters in the message. */
+    private static final int LENGTH = 256;
+
+    /** Batch under test. */
+    private Batch _batch;
+
+    /** Message, as indices in the alphabet. */
+    private int[] _indices;
+
+    /** Converted message, for every lane. */
+    private int[] _result;
+
+}
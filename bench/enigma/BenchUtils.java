@@ -0,0 +1,145 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+/** Generated alphabets, rotors and messages for the benchmarks.
+ *  @author Edan Bash
+ */
+final class BenchUtils {
+
+    /** Not instantiable. */
+    private BenchUtils() {
+    }
+
+    /** Return the characters of an alphabet of SIZE characters: the
+     *  upper-case letters if SIZE is 26, and otherwise SIZE consecutive
+     *  letters starting at U+0100. */
+    static String alphabetChars(int size) {
+        if (size == 26) {
+            return "ABCDEFGHIJKLMNOPQRSTUVWXYZ";
+        }
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < size; i += 1) {
+            result.append((char) (FIRST_LETTER + i));
+        }
+        return result.toString();
+    }
+
+    /** Return a random permutation of ALPHA in cycle notation, chosen
+     *  using RANDOM.  If REFLECTOR, the permutation consists of cycles
+     *  of two characters, so that it may be used for a reflector (the
+     *  size of ALPHA must then be even). */
+    static String cycles(String alpha, Random random, boolean reflector) {
+        int n = alpha.length();
+        int[] order = new int[n];
+        for (int i = 0; i < n; i += 1) {
+            order[i] = i;
+        }
+        for (int i = n - 1; i > 0; i -= 1) {
+            int j = random.nextInt(i + 1);
+            int t = order[i];
+            order[i] = order[j];
+            order[j] = t;
+        }
+        StringBuilder result = new StringBuilder();
+        if (reflector) {
+            for (int i = 0; i + 1 < n; i += 2) {
+                result.append('(').append(alpha.charAt(order[i]))
+                    .append(alpha.charAt(order[i + 1])).append(')');
+            }
+            return result.toString();
+        }
+        boolean[] done = new boolean[n];
+        for (int i = 0; i < n; i += 1) {
+            if (!done[i]) {
+                result.append('(');
+                for (int j = i; !done[j]; j = order[j]) {
+                    done[j] = true;
+                    result.append(alpha.charAt(j));
+                }
+                result.append(')');
+            }
+        }
+        return result.toString();
+    }
+
+    /** Return the text of a configuration file for a five-slot, three-pawl
+     *  machine over an alphabet of SIZE characters, with a reflector R,
+     *  a fixed rotor F and moving rotors M1, M2 and M3, generated using
+     *  the seed SEED. */
+    static String config(int size, long seed) {
+        Random random = new Random(seed);
+        String alpha = alphabetChars(size);
+        StringBuilder result = new StringBuilder();
+        result.append(alpha).append('\n').append("5 3\n");
+        result.append(" R R ").append(cycles(alpha, random, true))
+            .append('\n');
+        result.append(" F N ").append(cycles(alpha, random, false))
+            .append('\n');
+        for (int k = 1; k <= 3; k += 1) {
+            result.append(" M").append(k).append(" M")
+                .append(alpha.charAt(random.nextInt(size))).append(' ')
+                .append(cycles(alpha, random, false)).append('\n');
+        }
+        return result.toString();
+    }
+
+    /** Return the settings line for a machine configured by config(SIZE,
+     *  SEED). */
+    static String settings(int size, long seed) {
+        Random random = new Random(seed + 1);
+        String alpha = alphabetChars(size);
+        StringBuilder result = new StringBuilder("* R F M1 M2 M3 ");
+        for (int i = 0; i < 4; i += 1) {
+            result.append(alpha.charAt(random.nextInt(size)));
+        }
+        result.append(' ').append(cycles(alpha.substring(0, 8), random,
+                                          true));
+        return result.toString();
+    }
+
+    /** Return a machine configured by config(SIZE, SEED) and set up as
+     *  by settings(SIZE, SEED). */
+    static Machine machine(int size, long seed) {
+        Random random = new Random(seed);
+        Alphabet alpha = new Alphabet(alphabetChars(size));
+        String chars = alpha.getChars();
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        rotors.add(new Reflector("R", new Permutation(cycles(chars, random,
+                                                             true), alpha)));
+        rotors.add(new FixedRotor("F", new Permutation(cycles(chars, random,
+                                                              false),
+                                                       alpha)));
+        for (int k = 1; k <= 3; k += 1) {
+            String notch = String.valueOf(chars.charAt(random.nextInt(size)));
+            rotors.add(new MovingRotor("M" + k,
+                                       new Permutation(cycles(chars, random,
+                                                              false),
+                                                       alpha), notch));
+        }
+        Machine m = new Machine(alpha, 5, 3, rotors);
+        String[] settings = settings(size, seed).split(" ");
+        m.insertRotors(new String[] {"R", "F", "M1", "M2", "M3"});
+        m.setRotors(settings[6]);
+        m.setPlugboard(new Permutation(settings[7], alpha));
+        return m;
+    }
+
+    /** Return a random message of LENGTH characters from the alphabet of
+     *  SIZE characters, generated using SEED. */
+    static String message(int size, int length, long seed) {
+        Random random = new Random(seed);
+        String alpha = alphabetChars(size);
+        char[] result = new char[length];
+        for (int i = 0; i < length; i += 1) {
+            result[i] = alpha.charAt(random.nextInt(size));
+        }
+        return new String(result);
+    }
+
+    /** First character of the alphabets other than the upper-case
+     *  letters: U+0100, the start of a run of several hundred letters. */
+    private static final char FIRST_LETTER = '\u0100';
+
+}
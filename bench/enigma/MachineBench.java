@@ -0,0 +1,114 @@
+package enigma;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/** Benchmarks of Machine.convert on single characters, Strings and
+ *  char arrays, across alphabet and message sizes, and of taking and
+ *  restoring snapshots of the rotors.  Conversion results are per
+ *  message; divide by length for the cost per character.
+ *  @author Edan Bash
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MachineBench {
+
+    /** Size of the machine's alphabet. */
+    @Param({"26", "256"})
+    public int size;
+
+    /** Number of characters in each message. */
+    @Param({"16", "1024", "65536"})
+    public int length;
+
+    /** Set up the machine and message. */
+    @Setup
+    public void setUp() {
+        _machine = BenchUtils.machine(size, SEED);
+        _message = BenchUtils.message(size, length, SEED);
+        _chars = _message.toCharArray();
+        _result = new char[length];
+        _state = new int[_machine.numRotors() - 1];
+        _indices = new int[length];
+        for (int i = 0; i < length; i += 1) {
+            _indices[i] = _machine.alphabet().toInt(_chars[i]);
+        }
+    }
+
+    /** Convert the message one index at a time. */
+    @Benchmark
+    public void convertInt(Blackhole bh) {
+        for (int c : _indices) {
+            bh.consume(_machine.convert(c));
+        }
+    }
+
+    /** Convert the message as a String. */
+    @Benchmark
+    public String convertString() {
+        return _machine.convert(_message);
+    }
+
+    /** Convert the message between char arrays. */
+    @Benchmark
+    public char[] convertChars() {
+        _machine.convert(_chars, 0, length, _result, 0);
+        return _result;
+    }
+
+    /** Take and restore a packed snapshot of the rotors (independent of
+     *  length). */
+    @Benchmark
+    public long snapshotRestore() {
+        long state = _machine.snapshot();
+        _machine.restore(state);
+        return state;
+    }
+
+    /** Take and restore a snapshot of the rotors in an int array
+     *  (independent of length). */
+    @Benchmark
+    public int[] snapshotRestoreInts() {
+        _machine.snapshot(_state, 0);
+        _machine.restore(_state, 0);
+        return _state;
+    }
+
+    /** Seed for the generated machine and message. */
+    private static final long SEED = 61;
+
+    /** Machine under test. */
+    private Machine _machine;
+
+    /** Message to convert. */
+    private String _message;
+
+    /** Characters of _message. */
+    private char[] _chars;
+
+    /** Indices in the alphabet of the characters of _message. */
+    private int[] _indices;
+
+    /** Destination for convertChars. */
+    private char[] _result;
+
+    /** Destination for snapshotRestoreInts. */
+    private int[] _state;
+
+}
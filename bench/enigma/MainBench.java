@@ -0,0 +1,114 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** End-to-end benchmarks of Main on generated configuration and input
+ *  files, writing to a file.  The benchmarks run with UTF-8 as the
+ *  default charset, so that large alphabets can be written.
+ *  @author Edan Bash
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dfile.encoding=UTF-8")
+public class MainBench {
+
+    /** Size of the machine's alphabet. */
+    @Param({"26", "256"})
+    public int size;
+
+    /** Number of message lines in the input. */
+    @Param({"1000", "50000"})
+    public int lines;
+
+    /** Options given to Main, separated by commas ("" for none). */
+    @Param({"", "--nio", "--parallel"})
+    public String options;
+
+    /** Write the configuration and input files. */
+    @Setup
+    public void setUp() throws IOException {
+        _dir = Files.createTempDirectory("enigma-bench");
+        Path config = _dir.resolve("bench.conf");
+        Path input = _dir.resolve("bench.in");
+        Charset charset = Charset.defaultCharset();
+        Files.write(config, BenchUtils.config(size, SEED).getBytes(charset));
+        ArrayList<String> text = new ArrayList<>();
+        for (int i = 0; i < lines; i += 1) {
+            if (i % SETTINGS_EVERY == 0) {
+                text.add(BenchUtils.settings(size, SEED));
+            }
+            text.add(BenchUtils.message(size, LINE_LENGTH, SEED + i));
+        }
+        Files.write(input, text, charset);
+        ArrayList<String> args = new ArrayList<>();
+        if (!options.isEmpty()) {
+            for (String option : options.split(",")) {
+                args.add(option);
+            }
+        }
+        args.add(config.toString());
+        args.add(input.toString());
+        args.add(_dir.resolve("bench.out").toString());
+        _args = args.toArray(new String[args.size()]);
+    }
+
+    /** Remove the generated files. */
+    @TearDown
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(_dir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(p -> {
+                try {
+                    Files.delete(p);
+                } catch (IOException excp) {
+                    throw new UncheckedIOException(excp);
+                }
+            });
+        }
+    }
+
+    /** Run Main over the generated files. */
+    @Benchmark
+    public void main() {
+        Main.main(_args);
+    }
+
+    /** Seed for generated files. */
+    private static final long SEED = 61;
+
+    /** Number of characters in each message line. */
+    private static final int LINE_LENGTH = 60;
+
+    /** Number of message lines following each settings line. */
+    private static final int SETTINGS_EVERY = 100;
+
+    /** Directory holding the generated files. */
+    private Path _dir;
+
+    /** Arguments to Main. */
+    private String[] _args;
+
+}
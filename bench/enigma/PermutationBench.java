@@ -0,0 +1,78 @@
+package enigma;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/** Benchmarks of Permutation.permute and Permutation.invert, on indices.
+ *  @author Edan Bash
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PermutationBench {
+
+    /** Size of the alphabet permuted. */
+    @Param({"26", "256", "4096"})
+    public int size;
+
+    /** Set up the permutation and its inputs. */
+    @Setup
+    public void setUp() {
+        Random random = new Random(SEED);
+        String chars = BenchUtils.alphabetChars(size);
+        _perm = new Permutation(BenchUtils.cycles(chars, random, false),
+                                new Alphabet(chars));
+        _inputs = new int[INPUTS];
+        for (int i = 0; i < INPUTS; i += 1) {
+            _inputs[i] = random.nextInt(size);
+        }
+    }
+
+    /** Apply the permutation to each input. */
+    @Benchmark
+    @OperationsPerInvocation(INPUTS)
+    public void permute(Blackhole bh) {
+        for (int p : _inputs) {
+            bh.consume(_perm.permute(p));
+        }
+    }
+
+    /** Apply the inverse permutation to each input. */
+    @Benchmark
+    @OperationsPerInvocation(INPUTS)
+    public void invert(Blackhole bh) {
+        for (int c : _inputs) {
+            bh.consume(_perm.invert(c));
+        }
+    }
+
+    /** Number of inputs per invocation. */
+    private static final int INPUTS = 1024;
+
+    /** Seed for generated permutations. */
+    private static final long SEED = 61;
+
+    /** Permutation under test. */
+    private Permutation _perm;
+
+    /** Indices to permute. */
+    private int[] _inputs;
+
+}
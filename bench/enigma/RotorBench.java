@@ -0,0 +1,87 @@
+package enigma;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/** Benchmarks of Rotor.convertForward and Rotor.convertBackward for a
+ *  moving rotor in a non-zero setting and ring setting.  Alphabets of
+ *  up to 256 characters use the rotor's offset tables; larger ones fall
+ *  back to arithmetic.
+ *  @author Edan Bash
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RotorBench {
+
+    /** Size of the rotor's alphabet. */
+    @Param({"26", "256", "4096"})
+    public int size;
+
+    /** Set up the rotor and its inputs. */
+    @Setup
+    public void setUp() {
+        Random random = new Random(SEED);
+        String chars = BenchUtils.alphabetChars(size);
+        _rotor = new MovingRotor("M",
+                                 new Permutation(BenchUtils.cycles(chars,
+                                                                   random,
+                                                                   false),
+                                                 new Alphabet(chars)),
+                                 chars.substring(0, 1));
+        _rotor.set(size / 3);
+        _rotor.setRing(size / 5);
+        _inputs = new int[INPUTS];
+        for (int i = 0; i < INPUTS; i += 1) {
+            _inputs[i] = random.nextInt(size);
+        }
+    }
+
+    /** Pass each input through the rotor from right to left. */
+    @Benchmark
+    @OperationsPerInvocation(INPUTS)
+    public void convertForward(Blackhole bh) {
+        for (int p : _inputs) {
+            bh.consume(_rotor.convertForward(p));
+        }
+    }
+
+    /** Pass each input through the rotor from left to right. */
+    @Benchmark
+    @OperationsPerInvocation(INPUTS)
+    public void convertBackward(Blackhole bh) {
+        for (int e : _inputs) {
+            bh.consume(_rotor.convertBackward(e));
+        }
+    }
+
+    /** Number of inputs per invocation. */
+    private static final int INPUTS = 1024;
+
+    /** Seed for generated rotors. */
+    private static final long SEED = 61;
+
+    /** Rotor under test. */
+    private Rotor _rotor;
+
+    /** Indices to convert. */
+    private int[] _inputs;
+
+}
@@ -1,16 +1,23 @@
 package enigma;
 
+import java.util.Arrays;
+
 /** An alphabet of encodable characters.  Provides a mapping from characters
- *  to and from indices into the alphabet.
+ *  to and from indices into the alphabet.  An alphabet may not contain
+ *  '(', ')' or '*', which delimit cycles and settings, or whitespace,
+ *  which separates the fields of configuration and settings lines and
+ *  which conversion skips.
  *  @author Edan Bash
  */
 class Alphabet {
 
     /** A new alphabet containing CHARS.  Character number #k has index
-     *  K (numbering from 0). No character may be duplicated. */
+     *  K (numbering from 0). No character may be duplicated, and none
+     *  may be whitespace, '(', ')' or '*'. */
     Alphabet(String chars) {
         _chars = chars;
-        checkAlphabet();
+        _charArray = chars.toCharArray();
+        buildIndex();
     }
 
     /** A default alphabet of all upper-case characters. */
@@ -20,24 +27,35 @@ class Alphabet {
 
     /** Returns the size of the alphabet. */
     int size() {
-        return _chars.length();
+        return _charArray.length;
     }
 
     /** Returns true if CH is in this alphabet. */
     boolean contains(char ch) {
-        return _chars.indexOf(ch) >= 0;
+        return toInt(ch) >= 0;
     }
 
     /** Returns character number INDEX in the alphabet, where
      *  0 <= INDEX < size(). */
     char toChar(int index) {
-        return _chars.charAt(index);
+        return _charArray[index];
     }
 
     /** Returns the index of character CH which must be in
-     *  the alphabet. This is the inverse of toChar(). */
+     *  the alphabet. This is the inverse of toChar(). Returns -1 if
+     *  CH is not in the alphabet. */
     int toInt(char ch) {
-        return (contains(ch)) ? _chars.indexOf(ch) : -1;
+        if (_dense != null) {
+            return ch < _dense.length ? _dense[ch] : -1;
+        }
+        int h = hash(ch);
+        while (_values[h] >= 0) {
+            if (_keys[h] == ch) {
+                return _values[h];
+            }
+            h = (h + 1) & _mask;
+        }
+        return -1;
     }
 
     /** Returns chars in this alphabet. */
@@ -45,22 +63,80 @@ class Alphabet {
         return _chars;
     }
 
-    /** Makes sures no duplicates and bad characters not in alphabet. */
-    private void checkAlphabet() {
-        for (int i = 0; i < _chars.length(); i += 1) {
-            char c = _chars.charAt(i);
-            if (_chars.indexOf(c) != _chars.lastIndexOf(c)) {
+    /** Builds the character-to-index mapping, making sure there are no
+     *  duplicates and no characters that are not allowed in an alphabet. */
+    private void buildIndex() {
+        int max = 0;
+        for (char c : _charArray) {
+            max = Math.max(max, c);
+        }
+        if (max < DENSE_LIMIT) {
+            _dense = new int[max + 1];
+            Arrays.fill(_dense, -1);
+        } else {
+            int capacity = Integer.highestOneBit(2 * _charArray.length + 1) * 2;
+            _keys = new char[capacity];
+            _values = new int[capacity];
+            Arrays.fill(_values, -1);
+            _mask = capacity - 1;
+            _shift = Integer.numberOfLeadingZeros(_mask);
+        }
+        for (int i = 0; i < _charArray.length; i += 1) {
+            char c = _charArray[i];
+            if (c == '(' || c == ')' || c == '*'
+                    || Character.isWhitespace(c)) {
+                throw new enigma.EnigmaException("Bad Alphabet: "
+                        + c + " not allowed");
+            }
+            if (contains(c)) {
                 throw new enigma.EnigmaException("Non-unique Alphabet");
             }
-            if (contains('(') || contains(')') || contains('*')) {
-                throw new enigma.EnigmaException("Bad Alphabet: "
-                        + c + "not allowed");
+            if (_dense != null) {
+                _dense[c] = i;
+            } else {
+                int h = hash(c);
+                while (_values[h] >= 0) {
+                    h = (h + 1) & _mask;
+                }
+                _keys[h] = c;
+                _values[h] = i;
             }
         }
     }
 
+    /** Returns the home slot of CH in the open-addressed index. */
+    private int hash(char ch) {
+        return (ch * HASH_MULTIPLIER) >>> _shift;
+    }
+
+    /** Alphabets whose characters all lie below this code point are
+     *  indexed by a dense table; others use an open-addressed table. */
+    private static final int DENSE_LIMIT = 4096;
+
+    /** Fibonacci hashing multiplier for the open-addressed table. */
+    private static final int HASH_MULTIPLIER = 0x9E3779B9;
 
     /** Characters in this alphabet. */
     private String _chars;
 
+    /** Characters in this alphabet, indexed by their position. */
+    private final char[] _charArray;
+
+    /** Maps a character to its index, or -1, when my characters are all
+     *  below DENSE_LIMIT.  Otherwise null. */
+    private int[] _dense;
+
+    /** Keys of the open-addressed index, used when _dense is null. */
+    private char[] _keys;
+
+    /** Values of the open-addressed index; -1 marks an empty slot. */
+    private int[] _values;
+
+    /** Mask for wrapping probes around the open-addressed index. */
+    private int _mask;
+
+    /** Shift that reduces a hash to an index in the open-addressed
+     *  index. */
+    private int _shift;
+
 }
@@ -1,6 +1,7 @@
 package enigma;
 
 import org.junit.Test;
+import static org.junit.Assert.*;
 
 /** The suite of all JUnit tests for the Alphabet class.
  *  @author Edan Bash
@@ -26,5 +27,39 @@ public class AlphabetTest {
         new enigma.Alphabet("20394vnw^");
     }
 
+    @Test
+    public void testToIntAndToChar() {
+        checkRoundTrip("ABCDEFGHIJKLMNOPQRSTUVWXYZ");
+        checkRoundTrip("0123456789.,?!");
+        checkRoundTrip("\u00c4\u00d6\u00dc\u0416\u0418\u042f");
+        checkRoundTrip("AB\u4e2d\u3042\uff21\u0416");
+    }
+
+    @Test
+    public void testNotContained() {
+        Alphabet alpha = new Alphabet("AB\u4e2d\u3042");
+        assertFalse(alpha.contains('C'));
+        assertFalse(alpha.contains('\u4e2e'));
+        assertEquals(-1, alpha.toInt('\uffff'));
+        assertFalse(new Alphabet("ABC").contains('\u0416'));
+    }
+
+    @Test (expected = enigma.EnigmaException.class)
+    public void testOtherWhitespaceInAlphabet() {
+        new enigma.Alphabet("AB\u3000C");
+    }
+
+    /** Check that every character of CHARS maps to its own index in an
+     *  alphabet built from CHARS, and back. */
+    private void checkRoundTrip(String chars) {
+        Alphabet alpha = new Alphabet(chars);
+        assertEquals(chars.length(), alpha.size());
+        for (int i = 0; i < chars.length(); i += 1) {
+            assertTrue(alpha.contains(chars.charAt(i)));
+            assertEquals(i, alpha.toInt(chars.charAt(i)));
+            assertEquals(chars.charAt(i), alpha.toChar(i));
+        }
+    }
+
 
 }
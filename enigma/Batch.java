@@ -0,0 +1,223 @@
+package enigma;
+
+import java.util.Arrays;
+
+import static enigma.EnigmaException.*;
+
+/** A batch of machines (lanes) that differ only in the settings of
+ *  their rotors, converting the same text in lockstep: each step
+ *  advances every lane and converts one character on each.  The lanes'
+ *  settings are kept in int arrays, one per slot, and their rotors
+ *  convert through the rotors' wiring, so that no lane needs Rotor
+ *  objects of its own.  This class converts the lanes one at a time;
+ *  VectorBatch converts many at once, with the Vector API, where it is
+ *  available.
+ *  @author Edan Bash
+ */
+class Batch {
+
+    /** Return a batch of LANES machines, each with the rotors, ring
+     *  settings, rotor settings and plugboard of MACHINE.  The batch
+     *  uses the Vector API if the jdk.incubator.vector module is present
+     *  and the alphabet is small enough for the rotors' offset tables,
+     *  and otherwise converts each lane in turn. */
+    static Batch create(Machine machine, int lanes) {
+        int size = machine.alphabet().size();
+        if ((long) size * size <= Rotor.MAX_TABLE_SIZE) {
+            try {
+                return (Batch) Class.forName("enigma.VectorBatch")
+                    .getDeclaredConstructor(Machine.class, int.class)
+                    .newInstance(machine, lanes);
+            } catch (ReflectiveOperationException | LinkageError excp) {
+                /* Fall through: no Vector API. */
+            }
+        }
+        return new Batch(machine, lanes);
+    }
+
+    /** A batch of LANES machines converting each lane in turn, each with
+     *  the rotors, ring settings, rotor settings and plugboard of
+     *  MACHINE. */
+    Batch(Machine machine, int lanes) {
+        this(machine, lanes, lanes);
+    }
+
+    /** A batch of LANES machines, each with the rotors, ring settings,
+     *  rotor settings and plugboard of MACHINE, whose settings arrays
+     *  have room for CAPACITY >= LANES lanes. */
+    Batch(Machine machine, int lanes, int capacity) {
+        if (lanes < 1) {
+            throw error("a batch needs at least one lane");
+        }
+        Rotor[] rotors = machine.activeRotors();
+        _alphabet = machine.alphabet();
+        _size = _alphabet.size();
+        _slots = rotors.length;
+        _lanes = lanes;
+        _rotates = new boolean[_slots];
+        _notches = new int[_slots][];
+        _settings = new int[_slots][];
+        for (int j = 0; j < _slots; j += 1) {
+            _rotates[j] = rotors[j].rotates();
+            _notches[j] = new int[_size];
+            for (int s = 0; s < _size; s += 1) {
+                _notches[j][s] = rotors[j].atNotch(s) ? 1 : 0;
+            }
+            _settings[j] = new int[capacity];
+            Arrays.fill(_settings[j], rotors[j].setting());
+        }
+        _reflector = rotors[0].setting();
+        _forward = new int[_slots][];
+        _inverse = new int[_slots][];
+        for (int j = 0; j < _slots; j += 1) {
+            Permutation perm = rotors[j].permutation();
+            _forward[j] = new int[_size];
+            _inverse[j] = new int[_size];
+            for (int c = 0; c < _size; c += 1) {
+                _forward[j][c] = perm.permute(c);
+                _inverse[j][c] = perm.invert(c);
+            }
+        }
+        Permutation plug = machine.plugboard().permutation();
+        _plugForward = new int[_size];
+        _plugInverse = new int[_size];
+        for (int c = 0; c < _size; c += 1) {
+            _plugForward[c] = plug.permute(c);
+            _plugInverse[c] = plug.invert(c);
+        }
+    }
+
+    /** Return the number of lanes. */
+    final int lanes() {
+        return _lanes;
+    }
+
+    /** Return the number of rotor slots, including the reflector's. */
+    final int slots() {
+        return _slots;
+    }
+
+    /** Return my alphabet. */
+    final Alphabet alphabet() {
+        return _alphabet;
+    }
+
+    /** Set the rotors of lane LANE to SETTINGS, indexed by slot, as for
+     *  Rotor.set (SETTINGS[0] is ignored). */
+    final void set(int lane, int[] settings) {
+        for (int j = 1; j < _slots; j += 1) {
+            _settings[j][lane] = Math.floorMod(settings[j], _size);
+        }
+    }
+
+    /** Set the rotors of lane LANE to SETTING, a string of slots() - 1
+     *  characters, each giving the setting of a rotor as for Rotor.set.
+     *  The ring settings remain those of the machine from which I was
+     *  made. */
+    final void set(int lane, String setting) {
+        if (setting.length() != _slots - 1) {
+            throw error("Incorrect number of settings");
+        }
+        for (int j = 1; j < _slots; j += 1) {
+            int s = _alphabet.toInt(setting.charAt(j - 1));
+            if (s < 0) {
+                throw error("Char: %c not in alphabet",
+                            setting.charAt(j - 1));
+            }
+            _settings[j][lane] = s;
+        }
+    }
+
+    /** Return the setting of the rotor in slot SLOT of lane LANE. */
+    final int setting(int lane, int slot) {
+        return _settings[slot][lane];
+    }
+
+    /** Convert the LEN characters of SRC starting at OFF, as indices in
+     *  my alphabet, on every lane, advancing each lane's rotors before
+     *  each character.  The result of converting SRC[OFF + I] on lane L
+     *  goes to DST[I * lanes() + L]. */
+    void convert(int[] src, int off, int len, int[] dst) {
+        int last = _slots - 1;
+        for (int i = 0; i < len; i += 1) {
+            int in = _plugForward[src[off + i]];
+            int base = i * _lanes;
+            for (int l = 0; l < _lanes; l += 1) {
+                advance(l);
+                int x = in;
+                for (int j = last; j >= 1; j -= 1) {
+                    x = through(_forward[j], _settings[j][l], x);
+                }
+                x = through(_forward[0], _reflector, x);
+                for (int j = 1; j <= last; j += 1) {
+                    x = through(_inverse[j], _settings[j][l], x);
+                }
+                dst[base + l] = _plugInverse[x];
+            }
+        }
+    }
+
+    /** Advance the rotors of lane L for one keypress, as
+     *  Machine.advanceRotors does. */
+    private void advance(int l) {
+        int last = _slots - 1;
+        boolean atNotch = _notches[1][_settings[1][l]] != 0;
+        for (int i = 1; i <= last; i += 1) {
+            boolean rightAtNotch = i < last
+                && _notches[i + 1][_settings[i + 1][l]] != 0;
+            if (i == last
+                    || (rightAtNotch && _rotates[i])
+                    || (atNotch && _rotates[i - 1])) {
+                int s = _settings[i][l] + 1;
+                _settings[i][l] = s == _size ? 0 : s;
+            }
+            atNotch = rightAtNotch;
+        }
+    }
+
+    /** Return the result of passing C through the rotor with wiring
+     *  WIRING at setting S. */
+    private int through(int[] wiring, int s, int c) {
+        c += s;
+        if (c >= _size) {
+            c -= _size;
+        }
+        c = wiring[c] - s;
+        if (c < 0) {
+            c += _size;
+        }
+        return c;
+    }
+
+    /** Alphabet of the machines. */
+    final Alphabet _alphabet;
+
+    /** Size of _alphabet. */
+    final int _size;
+
+    /** Number of slots. */
+    final int _slots;
+
+    /** Number of lanes. */
+    final int _lanes;
+
+    /** Setting of the reflector. */
+    final int _reflector;
+
+    /** Forward and inverse wiring of the rotor in each slot. */
+    private final int[][] _forward, _inverse;
+
+    /** Whether the rotor in each slot rotates. */
+    final boolean[] _rotates;
+
+    /** 1 if the rotor in each slot is at a notch at each setting, and
+     *  otherwise 0. */
+    final int[][] _notches;
+
+    /** Setting of the rotor in each slot for each lane. */
+    final int[][] _settings;
+
+    /** The plugboard and its inverse. */
+    final int[] _plugForward, _plugInverse;
+
+}
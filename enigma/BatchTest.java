@@ -0,0 +1,108 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Batch and VectorBatch classes.
+ *  @author Edan Bash
+ */
+public class BatchTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /** Return a machine with reflector B and rotors Beta, III, IV and VI
+     *  (which has two notches) at ring settings AQZ, plugboard
+     *  (AQ)(EP)(TZ). */
+    private Machine machine() {
+        Machine m = navalMachine(5, 3, "B", "Beta", "III", "IV", "VI");
+        m.insertRotors(new String[] {"B", "Beta", "III", "IV", "VI"});
+        String rings = "AQZ";
+        for (int j = 2; j < 5; j += 1) {
+            m.activeRotors()[j].setRing(rings.charAt(j - 2));
+        }
+        m.setPlugboard(new Permutation("(AQ)(EP)(TZ)", UPPER));
+        return m;
+    }
+
+    /** Check that BATCH, made from machine(), converts TEXT on each of
+     *  its lanes, set to SETTINGS, as a copy of machine() does. */
+    private void checkLanes(Batch batch, int[][] settings, int[] text) {
+        int lanes = batch.lanes();
+        for (int l = 0; l < lanes; l += 1) {
+            batch.set(l, settings[l]);
+        }
+        int[] result = new int[text.length * lanes];
+        batch.convert(text, 0, text.length, result);
+        for (int l = 0; l < lanes; l += 1) {
+            Machine m = machine();
+            for (int j = 1; j < 5; j += 1) {
+                m.activeRotors()[j].set(settings[l][j]);
+            }
+            for (int i = 0; i < text.length; i += 1) {
+                assertEquals(msg("lane " + l, "character %d", i),
+                             m.convert(text[i]), result[i * lanes + l]);
+            }
+            for (int j = 1; j < 5; j += 1) {
+                assertEquals(m.activeRotors()[j].setting(),
+                             batch.setting(l, j));
+            }
+        }
+    }
+
+    /** Check that batches made by Batch.create if VECTOR, and otherwise
+     *  by the Batch constructor, agree with Machine. */
+    private void checkAgainstMachine(boolean vector) {
+        Random random = new Random(19);
+        for (int lanes : new int[] {1, 7, 16, 37}) {
+            int[][] settings = new int[lanes][5];
+            for (int l = 0; l < lanes; l += 1) {
+                for (int j = 1; j < 5; j += 1) {
+                    settings[l][j] = random.nextInt(26);
+                }
+            }
+            int[] text = new int[700];
+            for (int i = 0; i < text.length; i += 1) {
+                text[i] = random.nextInt(26);
+            }
+            Batch batch = vector ? Batch.create(machine(), lanes)
+                : new Batch(machine(), lanes);
+            checkLanes(batch, settings, text);
+        }
+    }
+
+    @Test
+    public void testScalar() {
+        checkAgainstMachine(false);
+    }
+
+    @Test
+    public void testCreate() {
+        checkAgainstMachine(true);
+        boolean vectors =
+            ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+        assertEquals(vectors ? "VectorBatch" : "Batch",
+                     Batch.create(machine(), 3).getClass().getSimpleName());
+    }
+
+    @Test
+    public void testSetString() {
+        Batch batch = new Batch(machine(), 2);
+        batch.set(1, "XAMZ");
+        assertEquals(UPPER.toInt('X'), batch.setting(1, 1));
+        assertEquals(UPPER.toInt('Z'), batch.setting(1, 4));
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testBadSetting() {
+        new Batch(machine(), 2).set(0, "XAM");
+    }
+
+}
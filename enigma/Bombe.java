@@ -0,0 +1,442 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import static enigma.EnigmaException.*;
+
+/** A known-plaintext attack in the manner of the Turing-Welchman Bombe.
+ *  A crib (guessed plaintext) aligned with its ciphertext gives a menu:
+ *  a graph whose nodes are characters and which has an edge between
+ *  the crib and cipher characters at each position, labelled with the
+ *  position.  At each position the machine without its plugboard is an
+ *  involution (the scrambler), so if the plugboard takes A to X and the
+ *  menu has an edge from A to B at position I, the plugboard must take
+ *  B to the scrambler's image of X at position I.  For each rotor order
+ *  and start position, the Bombe hypothesizes each value of the
+ *  plugboard for the most connected character of the menu and follows
+ *  these implications; a loop in the menu leads a wrong hypothesis to
+ *  contradict itself.  The positions with a consistent hypothesis are
+ *  the stops.  The diagonal board adds the implication that if the
+ *  plugboard takes A to X it takes X to A.
+ *
+ *  All rings are taken to be at their 0 setting, so that the rotors'
+ *  stepping, which the search follows exactly, is determined by their
+ *  start positions.
+ *  @author Edan Bash
+ */
+final class Bombe {
+
+    /** Run the Bombe as specified by ARGS and print its stops, one
+     *  settings line each, in the format accepted by Main.  ARGS may
+     *  begin with the options
+     *    --diagonal      use the diagonal board;
+     *    --offset=N      the crib starts N characters into the message;
+     *    --parallel=N    search on N threads (by default, one per
+     *                    processor);
+     *  followed by the name of a configuration file, the crib and the
+     *  ciphertext.  Whitespace in the crib and ciphertext is ignored. */
+    static void run(String[] args) {
+        boolean diagonal = false;
+        int offset = 0;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int first = 0;
+        for (; first < args.length && args[first].startsWith("--");
+             first += 1) {
+            String option = args[first];
+            if (option.equals("--diagonal")) {
+                diagonal = true;
+            } else if (option.startsWith("--offset=")) {
+                offset = number(option, option.substring(9));
+            } else if (option.startsWith("--parallel=")) {
+                threads = number(option, option.substring(11));
+                if (threads == 0) {
+                    throw error("bad thread count in %s", option);
+                }
+            } else {
+                throw error("unknown option %s", option);
+            }
+        }
+        if (args.length - first != 3) {
+            throw error("usage: bombe [--diagonal] [--offset=N] "
+                        + "[--parallel=N] CONFIG CRIB CIPHERTEXT");
+        }
+        Machine catalog = new Main(args[first]).readConfig();
+        Bombe bombe = new Bombe(catalog, args[first + 1], args[first + 2],
+                                offset, diagonal);
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            for (Stop stop : bombe.search(pool)) {
+                System.out.println(stop);
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /** Return the non-negative integer VALUE, which is part of OPTION. */
+    private static int number(String option, String value) {
+        try {
+            int result = Integer.parseInt(value);
+            if (result >= 0) {
+                return result;
+            }
+        } catch (NumberFormatException excp) {
+            /* Fall through. */
+        }
+        throw error("bad number in %s", option);
+    }
+
+    /** A Bombe for the machines that can be made from the rotors of
+     *  CATALOG, given the crib CRIB that enciphers to CIPHER, starting
+     *  OFFSET characters into the message.  Uses the diagonal board iff
+     *  DIAGONAL.  Whitespace in CRIB and CIPHER is ignored. */
+    Bombe(Machine catalog, String crib, String cipher, int offset,
+          boolean diagonal) {
+        crib = crib.replaceAll("\\s", "");
+        cipher = cipher.replaceAll("\\s", "");
+        if (crib.length() != cipher.length() || crib.isEmpty()) {
+            throw error("crib and ciphertext differ in length");
+        }
+        _catalog = catalog;
+        _alphabet = catalog.alphabet();
+        _size = _alphabet.size();
+        _length = crib.length();
+        _offset = offset;
+        _diagonal = diagonal;
+        buildMenu(crib, cipher);
+    }
+
+    /** A stop: a rotor order, start position and plugboard consistent
+     *  with the crib. */
+    static final class Stop {
+
+        /** A stop for the rotors named ORDER at the start position
+         *  SETTING, with the plugboard (as far as it is deduced) given
+         *  in cycle notation by PLUGBOARD. */
+        Stop(String[] order, String setting, String plugboard) {
+            _order = order;
+            _setting = setting;
+            _plugboard = plugboard;
+        }
+
+        /** Return the names of my rotors, reflector first. */
+        String[] order() {
+            return _order;
+        }
+
+        /** Return the start position of my rotors (other than the
+         *  reflector). */
+        String setting() {
+            return _setting;
+        }
+
+        /** Return the deduced plugboard pairs, in cycle notation. */
+        String plugboard() {
+            return _plugboard;
+        }
+
+        /** Returns a settings line for this stop, as accepted by Main. */
+        @Override
+        public String toString() {
+            String result = "* " + String.join(" ", _order) + " " + _setting;
+            return _plugboard.isEmpty() ? result : result + " " + _plugboard;
+        }
+
+        /** Names of the rotors. */
+        private final String[] _order;
+
+        /** Start position. */
+        private final String _setting;
+
+        /** Deduced plugboard. */
+        private final String _plugboard;
+    }
+
+    /** Return the stops for every rotor order of my catalog, searching
+     *  the orders concurrently on POOL.  The stops are listed by rotor
+     *  order, as given by Machine.rotorOrders, and then by start
+     *  position. */
+    List<Stop> search(ForkJoinPool pool) {
+        ArrayList<Callable<List<Stop>>> tasks = new ArrayList<>();
+        for (String[] order : _catalog.rotorOrders()) {
+            tasks.add(() -> new Worker(order).search());
+        }
+        ArrayList<Stop> result = new ArrayList<>();
+        try {
+            for (Future<List<Stop>> stops : pool.invokeAll(tasks)) {
+                result.addAll(stops.get());
+            }
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw error("interrupted");
+        } catch (ExecutionException excp) {
+            if (excp.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) excp.getCause();
+            }
+            throw new Error(excp.getCause());
+        }
+        return result;
+    }
+
+    /** Return the stops for the rotors named ORDER. */
+    List<Stop> search(String[] order) {
+        return new Worker(order).search();
+    }
+
+    /** Build the menu for CRIB and CIPHER, and choose the characters
+     *  from which to test each of its loops. */
+    private void buildMenu(String crib, String cipher) {
+        int[] degree = new int[_size];
+        int[] from = new int[_length], to = new int[_length];
+        for (int i = 0; i < _length; i += 1) {
+            from[i] = index(crib.charAt(i));
+            to[i] = index(cipher.charAt(i));
+            if (from[i] == to[i]) {
+                throw error("crib cannot be aligned: %c enciphers to itself "
+                            + "at position %d", crib.charAt(i), i);
+            }
+            degree[from[i]] += 1;
+            degree[to[i]] += 1;
+        }
+        _edgeStart = new int[_size + 1];
+        for (int c = 0; c < _size; c += 1) {
+            _edgeStart[c + 1] = _edgeStart[c] + degree[c];
+        }
+        _edgeTo = new int[2 * _length];
+        _edgePosition = new int[2 * _length];
+        int[] next = _edgeStart.clone();
+        for (int i = 0; i < _length; i += 1) {
+            addEdge(next, from[i], to[i], i);
+            addEdge(next, to[i], from[i], i);
+        }
+
+        int[] component = new int[_size];
+        for (int c = 0; c < _size; c += 1) {
+            component[c] = c;
+        }
+        for (int i = 0; i < _length; i += 1) {
+            component[find(component, from[i])] = find(component, to[i]);
+        }
+        int[] edges = new int[_size], nodes = new int[_size];
+        int[] best = new int[_size];
+        Arrays.fill(best, -1);
+        for (int c = 0; c < _size; c += 1) {
+            int root = find(component, c);
+            if (degree[c] > 0) {
+                nodes[root] += 1;
+                edges[root] += degree[c];
+                if (best[root] < 0 || degree[c] > degree[best[root]]) {
+                    best[root] = c;
+                }
+            }
+        }
+        ArrayList<Integer> tests = new ArrayList<>();
+        int main = -1;
+        for (int c = 0; c < _size; c += 1) {
+            if (component[c] == c && nodes[c] > 0
+                && (_diagonal || edges[c] / 2 >= nodes[c])) {
+                if (main < 0 || edges[c] > edges[main]) {
+                    main = c;
+                }
+                tests.add(c);
+            }
+        }
+        if (main < 0) {
+            throw error("crib menu has no loops");
+        }
+        _tests = new int[tests.size()];
+        _tests[0] = best[main];
+        for (int k = 0, j = 1; k < tests.size(); k += 1) {
+            if (tests.get(k) != main) {
+                _tests[j] = best[tests.get(k)];
+                j += 1;
+            }
+        }
+    }
+
+    /** Add an edge from A to B labelled with POSITION to the menu, where
+     *  NEXT gives the next free entry for each character. */
+    private void addEdge(int[] next, int a, int b, int position) {
+        _edgeTo[next[a]] = b;
+        _edgePosition[next[a]] = position;
+        next[a] += 1;
+    }
+
+    /** Return the representative of C in the union-find forest
+     *  COMPONENT. */
+    private static int find(int[] component, int c) {
+        while (component[c] != c) {
+            component[c] = component[component[c]];
+            c = component[c];
+        }
+        return c;
+    }
+
+    /** Return the index of C in my alphabet. */
+    private int index(char c) {
+        int result = _alphabet.toInt(c);
+        if (result < 0) {
+            throw error("%c not in alphabet", c);
+        }
+        return result;
+    }
+
+    /** The search of one rotor order.  Each worker evaluates the
+     *  scrambler through its own Scrambler, which copies the catalog's
+     *  rotors but shares their wiring. */
+    private final class Worker {
+
+        /** A worker for the rotors named ORDER. */
+        Worker(String[] order) {
+            _scrambler = new Scrambler(_catalog, order, _length);
+            _start = new int[_scrambler.slots()];
+            _assigned = new int[_size];
+            _stamps = new int[_size];
+            _stack = new int[2 * _size];
+        }
+
+        /** Return the stops for my rotor order. */
+        List<Stop> search() {
+            ArrayList<Stop> result = new ArrayList<>();
+            do {
+                _scrambler.position(_start, _offset);
+                boolean others = true;
+                for (int k = 1; k < _tests.length && others; k += 1) {
+                    others = false;
+                    for (int x = 0; x < _size && !others; x += 1) {
+                        others = consistent(_tests[k], x);
+                    }
+                }
+                for (int x = 0; x < _size && others; x += 1) {
+                    if (consistent(_tests[0], x)) {
+                        result.add(stop());
+                    }
+                }
+            } while (_scrambler.next(_start, 1));
+            return result;
+        }
+
+        /** Returns true iff the hypothesis that the plugboard takes C to
+         *  X leads to no contradiction.  Leaves the deduced plugboard in
+         *  _assigned. */
+        private boolean consistent(int c, int x) {
+            _stamp += 1;
+            _top = 0;
+            if (!assign(c, x)) {
+                return false;
+            }
+            while (_top > 0) {
+                _top -= 1;
+                int a = _stack[_top];
+                int y = _assigned[a];
+                for (int e = _edgeStart[a]; e < _edgeStart[a + 1]; e += 1) {
+                    if (!assign(_edgeTo[e],
+                                _scrambler.scramble(_edgePosition[e], y))) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+
+        /** Deduce that the plugboard takes A to Y (and, with the diagonal
+         *  board, Y to A), returning false if that contradicts an earlier
+         *  deduction. */
+        private boolean assign(int a, int y) {
+            if (_stamps[a] == _stamp) {
+                if (_assigned[a] != y) {
+                    return false;
+                }
+            } else {
+                _stamps[a] = _stamp;
+                _assigned[a] = y;
+                _stack[_top] = a;
+                _top += 1;
+            }
+            if (_diagonal && a != y) {
+                if (_stamps[y] == _stamp) {
+                    return _assigned[y] == a;
+                }
+                _stamps[y] = _stamp;
+                _assigned[y] = a;
+                _stack[_top] = y;
+                _top += 1;
+            }
+            return true;
+        }
+
+        /** Return the stop at _start with the plugboard deduced by the
+         *  last call to consistent. */
+        private Stop stop() {
+            StringBuilder plugboard = new StringBuilder();
+            for (int a = 0; a < _size; a += 1) {
+                if (_stamps[a] == _stamp) {
+                    int y = _assigned[a];
+                    if (a < y && (_stamps[y] != _stamp || _assigned[y] == a)) {
+                        plugboard.append('(').append(_alphabet.toChar(a))
+                            .append(_alphabet.toChar(y)).append(')');
+                    }
+                }
+            }
+            return new Stop(_scrambler.order(), _scrambler.setting(_start),
+                            plugboard.toString());
+        }
+
+        /** The scrambler for my rotor order. */
+        private final Scrambler _scrambler;
+
+        /** Start position being tested, indexed by slot. */
+        private final int[] _start;
+
+        /** Deduced plugboard image of each character for which
+         *  _stamps equals _stamp. */
+        private final int[] _assigned;
+
+        /** Hypothesis in which each entry of _assigned was deduced. */
+        private final int[] _stamps;
+
+        /** Current hypothesis. */
+        private int _stamp;
+
+        /** Characters whose deductions remain to be followed. */
+        private final int[] _stack;
+
+        /** Number of entries in _stack. */
+        private int _top;
+    }
+
+    /** Rotors from which to make machines. */
+    private final Machine _catalog;
+
+    /** Alphabet of _catalog. */
+    private final Alphabet _alphabet;
+
+    /** Size of _alphabet. */
+    private final int _size;
+
+    /** Length of the crib. */
+    private final int _length;
+
+    /** Position in the message of the start of the crib. */
+    private final int _offset;
+
+    /** True iff using the diagonal board. */
+    private final boolean _diagonal;
+
+    /** The edges of the menu from character C are those with indices
+     *  _edgeStart[C] .. _edgeStart[C + 1] - 1 in _edgeTo and
+     *  _edgePosition, which give their other ends and crib positions. */
+    private int[] _edgeStart, _edgeTo, _edgePosition;
+
+    /** The characters from which hypotheses are tested: first that of
+     *  the main part of the menu, then one for each other part with a
+     *  loop. */
+    private int[] _tests;
+
+}
@@ -0,0 +1,104 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Bombe class.
+ *  @author Edan Bash
+ */
+public class BombeTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(30);
+
+    /** Return an unconfigured four-slot machine with reflector B and
+     *  rotors I, II, III and IV available. */
+    private Machine catalog() {
+        return navalMachine(4, 3, "B", "I", "II", "III", "IV");
+    }
+
+    /** Return the encryption of MSG by catalog() with rotors ORDER at
+     *  SETTING and plugboard PLUGS. */
+    private String encrypt(String[] order, String setting, String plugs,
+                           String msg) {
+        Machine m = catalog();
+        m.insertRotors(order);
+        m.setRotors(setting);
+        m.setPlugboard(new Permutation(plugs, UPPER));
+        return m.convert(msg);
+    }
+
+    /** Return the stops in STOPS for the rotor order ORDER at SETTING. */
+    private List<Bombe.Stop> matching(List<Bombe.Stop> stops, String[] order,
+                                      String setting) {
+        ArrayList<Bombe.Stop> result = new ArrayList<>();
+        for (Bombe.Stop stop : stops) {
+            if (String.join(" ", stop.order()).equals(String.join(" ", order))
+                && stop.setting().equals(setting)) {
+                result.add(stop);
+            }
+        }
+        return result;
+    }
+
+    @Test
+    public void testRotorOrders() {
+        List<String[]> orders = catalog().rotorOrders();
+        assertEquals(4 * 3 * 2, orders.size());
+        for (String[] order : orders) {
+            assertEquals("B", order[0]);
+        }
+    }
+
+    @Test
+    public void testFindsSettings() {
+        String[] order = {"B", "III", "I", "IV"};
+        String crib = "WEATHERREPORTFORTHENORTHSEA";
+        String cipher = encrypt(order, "KQU", "(AT)(HX)(ES)(RN)", crib);
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            for (boolean diagonal : new boolean[] {false, true}) {
+                Bombe bombe = new Bombe(catalog(), crib, cipher, 0,
+                                        diagonal);
+                List<Bombe.Stop> stops = bombe.search(pool);
+                List<Bombe.Stop> found = matching(stops, order, "KQU");
+                assertFalse(found.isEmpty());
+                assertTrue(stops.size() < 50);
+                String truth = "(AT)(ES)(HX)(NR)";
+                for (Bombe.Stop stop : found) {
+                    String p = stop.plugboard();
+                    for (int i = 0; i < p.length(); i += 4) {
+                        assertTrue(p, truth.contains(p.substring(i, i + 4)));
+                    }
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testOffset() {
+        String[] order = {"B", "IV", "II", "I"};
+        String msg = "ATTACKATDAWNONTHEEASTERNFRONTLINES";
+        String cipher = encrypt(order, "ZAP", "(BQ)(CR)", msg);
+        Bombe bombe = new Bombe(catalog(), msg.substring(6),
+                                cipher.substring(6), 6, true);
+        assertFalse(matching(bombe.search(order), order, "ZAP").isEmpty());
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testCribEnciphersToItself() {
+        new Bombe(catalog(), "ABC", "XBZ", 0, false);
+    }
+
+}
@@ -0,0 +1,296 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import static enigma.EnigmaException.*;
+
+/** A ciphertext-only search for rotor orders and start positions.  Each
+ *  legal rotor order and start position of a catalog is tried by
+ *  decrypting the ciphertext with an empty plugboard and scoring the
+ *  result by its index of coincidence: the probability that two
+ *  characters drawn from it at random are the same.  Text decrypted
+ *  with the right rotors is closer to the plaintext language, and so
+ *  scores higher than the near-uniform output of wrong rotors, even
+ *  though the plugboard is missing.  The best candidates found are
+ *  kept in a bounded heap shared by the workers.  As for Bombe, rings
+ *  are taken to be at their 0 setting.
+ *  @author Edan Bash
+ */
+final class CoincidenceSearch {
+
+    /** Run the search as specified by ARGS and print the best candidates,
+     *  best first, each as its score followed by a settings line in the
+     *  format accepted by Main.  ARGS may begin with the options
+     *    --top=K         print the best K candidates (by default, 10);
+     *    --parallel=N    search on N threads (by default, one per
+     *                    processor);
+     *  followed by the name of a configuration file and the name of a
+     *  file containing the ciphertext.  Whitespace in the ciphertext is
+     *  ignored. */
+    static void run(String[] args) {
+        int top = DEFAULT_TOP;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int first = 0;
+        for (; first < args.length && args[first].startsWith("--");
+             first += 1) {
+            String option = args[first];
+            if (option.startsWith("--top=")) {
+                top = number(option, option.substring(6));
+            } else if (option.startsWith("--parallel=")) {
+                threads = number(option, option.substring(11));
+            } else {
+                throw error("unknown option %s", option);
+            }
+        }
+        if (args.length - first != 2) {
+            throw error("usage: ioc-search [--top=K] [--parallel=N] "
+                        + "CONFIG CIPHERTEXT");
+        }
+        Machine catalog = new Main(args[first]).readConfig();
+        String text;
+        try {
+            text = new String(Files.readAllBytes(Paths.get(args[first + 1])),
+                              Charset.defaultCharset());
+        } catch (IOException | InvalidPathException excp) {
+            throw error("could not open %s", args[first + 1]);
+        }
+        CoincidenceSearch search = new CoincidenceSearch(catalog, text, top);
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            for (Candidate candidate : search.search(pool)) {
+                System.out.println(candidate);
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /** Return the positive integer VALUE, which is part of OPTION. */
+    private static int number(String option, String value) {
+        try {
+            int result = Integer.parseInt(value);
+            if (result > 0) {
+                return result;
+            }
+        } catch (NumberFormatException excp) {
+            /* Fall through. */
+        }
+        throw error("bad number in %s", option);
+    }
+
+    /** A search for the rotors of CATALOG that decrypt CIPHERTEXT best,
+     *  keeping the best TOP candidates.  Whitespace in CIPHERTEXT is
+     *  ignored. */
+    CoincidenceSearch(Machine catalog, String ciphertext, int top) {
+        _catalog = catalog;
+        _size = catalog.alphabet().size();
+        _top = top;
+        int[] text = new int[ciphertext.length()];
+        int n = 0;
+        for (int i = 0; i < ciphertext.length(); i += 1) {
+            char c = ciphertext.charAt(i);
+            int index = catalog.alphabet().toInt(c);
+            if (index >= 0) {
+                text[n] = index;
+                n += 1;
+            } else if (!Character.isWhitespace(c)) {
+                throw new enigma.EnigmaException(c + " not in alphabet");
+            }
+        }
+        if (n < 2) {
+            throw error("ciphertext too short");
+        }
+        _text = Arrays.copyOf(text, n);
+    }
+
+    /** A rotor order and start position, with the index of coincidence
+     *  of the ciphertext decrypted with them. */
+    static final class Candidate implements Comparable<Candidate> {
+
+        /** A candidate for the rotors named ORDER at start position
+         *  SETTING, scoring SCORE.  RANK orders candidates with equal
+         *  scores, lower first. */
+        Candidate(String[] order, String setting, double score, long rank) {
+            _order = order;
+            _setting = setting;
+            _score = score;
+            _rank = rank;
+        }
+
+        /** Return the names of my rotors, reflector first. */
+        String[] order() {
+            return _order;
+        }
+
+        /** Return my start position. */
+        String setting() {
+            return _setting;
+        }
+
+        /** Return my index of coincidence. */
+        double score() {
+            return _score;
+        }
+
+        /** Candidates are ordered from worst to best. */
+        @Override
+        public int compareTo(Candidate other) {
+            int result = Double.compare(_score, other._score);
+            if (result == 0) {
+                result = Long.compare(other._rank, _rank);
+            }
+            return result;
+        }
+
+        /** Returns my score and a settings line, as accepted by Main. */
+        @Override
+        public String toString() {
+            return String.format("%.5f * %s %s", _score,
+                                 String.join(" ", _order), _setting);
+        }
+
+        /** Names of my rotors. */
+        private final String[] _order;
+
+        /** Start position. */
+        private final String _setting;
+
+        /** Index of coincidence. */
+        private final double _score;
+
+        /** Tie-breaker: position in the order of the search. */
+        private final long _rank;
+    }
+
+    /** Return the best candidates for every rotor order and start
+     *  position, best first, searching on POOL.  The work is divided by
+     *  rotor order and setting of the leftmost settable rotor. */
+    List<Candidate> search(ForkJoinPool pool) {
+        List<String[]> orders = _catalog.rotorOrders();
+        _best = new PriorityQueue<>();
+        _threshold = Double.NEGATIVE_INFINITY;
+        ArrayList<Part> parts = new ArrayList<>();
+        for (int k = 0; k < orders.size(); k += 1) {
+            for (int s = 0; s < _size; s += 1) {
+                parts.add(new Part(orders.get(k), k, s));
+            }
+        }
+        pool.invoke(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                invokeAll(parts);
+            }
+        });
+        ArrayList<Candidate> result = new ArrayList<>(_best);
+        result.sort(Collections.reverseOrder());
+        return result;
+    }
+
+    /** The trials of one rotor order with one setting of the leftmost
+     *  settable rotor. */
+    private final class Part extends RecursiveAction {
+
+        /** The trials of the rotors named ORDER, the Kth rotor order,
+         *  with the leftmost settable rotor at setting FIRST. */
+        Part(String[] order, int k, int first) {
+            _order = order;
+            _k = k;
+            _first = first;
+        }
+
+        @Override
+        protected void compute() {
+            Scrambler scrambler = new Scrambler(_catalog, _order,
+                                                _text.length);
+            int[] start = new int[scrambler.slots()];
+            start[1] = _first;
+            int[] counts = new int[_size];
+            long pairs = (long) _text.length * (_text.length - 1);
+            long trial = 0;
+            do {
+                scrambler.position(start, 0);
+                long sum = 0;
+                for (int i = 0; i < _text.length; i += 1) {
+                    int c = scrambler.scramble(i, _text[i]);
+                    sum += counts[c];
+                    counts[c] += 1;
+                }
+                Arrays.fill(counts, 0);
+                double score = 2.0 * sum / pairs;
+                if (score >= _threshold) {
+                    offer(scrambler, start, score, trial);
+                }
+                trial += 1;
+            } while (scrambler.next(start, 2));
+        }
+
+        /** Offer the candidate for SCRAMBLER's rotors at START, with
+         *  score SCORE, which was the TRIALth of this part. */
+        private void offer(Scrambler scrambler, int[] start, double score,
+                           long trial) {
+            long rank = ((long) _k * _size + _first) * BIG + trial;
+            Candidate candidate = new Candidate(scrambler.order(),
+                                                scrambler.setting(start),
+                                                score, rank);
+            synchronized (_best) {
+                if (_best.size() < _top) {
+                    _best.add(candidate);
+                } else if (candidate.compareTo(_best.peek()) > 0) {
+                    _best.poll();
+                    _best.add(candidate);
+                } else {
+                    return;
+                }
+                if (_best.size() == _top) {
+                    _threshold = _best.peek().score();
+                }
+            }
+        }
+
+        /** Names of my rotors. */
+        private final String[] _order;
+
+        /** Index of my rotor order. */
+        private final int _k;
+
+        /** Setting of the leftmost settable rotor. */
+        private final int _first;
+    }
+
+    /** Default number of candidates to report. */
+    private static final int DEFAULT_TOP = 10;
+
+    /** Bound on the number of trials in one Part, used in ranking. */
+    private static final long BIG = 1L << 40;
+
+    /** Rotors from which to make machines. */
+    private final Machine _catalog;
+
+    /** Size of the alphabet. */
+    private final int _size;
+
+    /** Number of candidates to keep. */
+    private final int _top;
+
+    /** Ciphertext, as indices in the alphabet. */
+    private final int[] _text;
+
+    /** Best candidates so far, worst first. */
+    private PriorityQueue<Candidate> _best;
+
+    /** Lowest score in _best once it is full, and otherwise negative
+     *  infinity; candidates scoring less need not be offered. */
+    private volatile double _threshold;
+
+}
@@ -0,0 +1,65 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the CoincidenceSearch class.
+ *  @author Edan Bash
+ */
+public class CoincidenceSearchTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(30);
+
+    /** An English plaintext. */
+    private static final String PLAIN =
+        "FROMHISSHOULDERHIAWATHATOOKTHECAMERAOFROSEWOODMADEOFSLIDING"
+        + "FOLDINGROSEWOODNEATLYPUTITALLTOGETHERINITSCASEITLAYCOMPACTLY"
+        + "FOLDEDINTONEARLYNOTHINGBUTHEOPENEDOUTTHEHINGESPUSHEDANDPULLED"
+        + "THEJOINTSANDHINGESTILLITLOOKEDALLSQUARESANDOBLONGSLIKEA"
+        + "COMPLICATEDFIGUREINTHESECONDBOOKOFEUCLID";
+
+    /** Return an unconfigured four-slot machine with reflector B and
+     *  rotors I, II and III available. */
+    private Machine catalog() {
+        return navalMachine(4, 3, "B", "I", "II", "III");
+    }
+
+    @Test
+    public void testFindsRotors() {
+        Machine m = catalog();
+        m.insertRotors(new String[] {"B", "II", "III", "I"});
+        m.setRotors("JAX");
+        m.setPlugboard(new Permutation("(AZ)(QT)", UPPER));
+        String cipher = m.convert(PLAIN);
+        CoincidenceSearch search = new CoincidenceSearch(catalog(), cipher,
+                                                         3);
+        List<CoincidenceSearch.Candidate> best;
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            best = search.search(pool);
+        } finally {
+            pool.shutdown();
+        }
+        assertEquals(3, best.size());
+        assertEquals("B II III I", String.join(" ", best.get(0).order()));
+        assertEquals("JAX", best.get(0).setting());
+        assertTrue(best.get(0).score() > 0.055);
+        assertTrue(best.get(0).score() >= best.get(1).score());
+        assertTrue(best.get(1).score() >= best.get(2).score());
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testNotInAlphabet() {
+        new CoincidenceSearch(catalog(), "ABC1", 3);
+    }
+
+}
@@ -0,0 +1,171 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+
+import static enigma.EnigmaException.*;
+
+/** A precompiled configuration: the alphabet, rotor slots, pawls and
+ *  available rotors of a machine, stored in binary so that it can be
+ *  loaded without parsing.  The image consists of a header (magic number,
+ *  version, alphabet size, slots, pawls, number of rotors), the
+ *  characters of the alphabet, and then for each rotor its type
+ *  ('N', 'R' or 'M'), the length and characters of its name, the number
+ *  and indices of its notches, and its forward and inverse tables.  All
+ *  values are big-endian ints or chars.
+ *  @author Edan Bash
+ */
+final class ConfigImage {
+
+    /** Not instantiable. */
+    private ConfigImage() {
+    }
+
+    /** Write the configuration of M, whose rotors must all be at setting
+     *  and ring setting 0, as an image to the file named FILE, replacing
+     *  any existing file. */
+    static void write(Machine m, Path file) {
+        int n = m.alphabet().size();
+        long bytes = HEADER_SIZE + 2L * n;
+        for (Rotor r : m.allRotors()) {
+            bytes += 1 + 4 + 2L * r.name().length() + 4 + 4L * n + 8L * n;
+        }
+        if (bytes > Integer.MAX_VALUE) {
+            throw error("configuration too large to compile");
+        }
+        ByteBuffer image = ByteBuffer.allocate((int) bytes);
+        image.putInt(MAGIC).putInt(VERSION).putInt(n)
+            .putInt(m.numRotors()).putInt(m.numPawls())
+            .putInt(m.allRotors().size());
+        for (int i = 0; i < n; i += 1) {
+            image.putChar(m.alphabet().toChar(i));
+        }
+        for (Rotor r : m.allRotors()) {
+            image.put((byte) (r.reflecting() ? 'R' : r.rotates() ? 'M' : 'N'));
+            image.putInt(r.name().length());
+            for (int i = 0; i < r.name().length(); i += 1) {
+                image.putChar(r.name().charAt(i));
+            }
+            int notchCount = image.position();
+            image.putInt(0);
+            int notches = 0;
+            for (int s = 0; s < n; s += 1) {
+                if (r.atNotch(s)) {
+                    image.putInt(s);
+                    notches += 1;
+                }
+            }
+            image.putInt(notchCount, notches);
+            Permutation perm = r.permutation();
+            for (int i = 0; i < n; i += 1) {
+                image.putInt(perm.permute(i));
+            }
+            for (int i = 0; i < n; i += 1) {
+                image.putInt(perm.invert(i));
+            }
+        }
+        image.flip();
+        try (FileChannel channel =
+                 FileChannel.open(file, StandardOpenOption.CREATE,
+                                  StandardOpenOption.TRUNCATE_EXISTING,
+                                  StandardOpenOption.WRITE)) {
+            while (image.hasRemaining()) {
+                channel.write(image);
+            }
+        } catch (IOException excp) {
+            throw error("could not write %s", file);
+        }
+    }
+
+    /** Returns true iff the file named FILE begins as an image does. */
+    static boolean isImage(Path file) {
+        try (FileChannel channel = FileChannel.open(file)) {
+            ByteBuffer magic = ByteBuffer.allocate(4);
+            while (magic.hasRemaining() && channel.read(magic) >= 0) {
+                continue;
+            }
+            return !magic.hasRemaining() && magic.getInt(0) == MAGIC;
+        } catch (IOException excp) {
+            return false;
+        }
+    }
+
+    /** Return a machine with the configuration in the image in the file
+     *  named FILE. */
+    static Machine read(Path file) {
+        ByteBuffer image;
+        try (FileChannel channel = FileChannel.open(file)) {
+            image = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                                channel.size());
+        } catch (IOException excp) {
+            throw error("could not open %s", file);
+        }
+        try {
+            if (image.getInt() != MAGIC || image.getInt() != VERSION) {
+                throw error("%s is not a configuration image", file);
+            }
+            int n = image.getInt();
+            int numRotors = image.getInt();
+            int pawls = image.getInt();
+            int count = image.getInt();
+            Alphabet alphabet = new Alphabet(string(image, n));
+            ArrayList<Rotor> rotors = new ArrayList<>(count);
+            for (int k = 0; k < count; k += 1) {
+                char type = (char) image.get();
+                String name = string(image, image.getInt());
+                char[] notches = new char[image.getInt()];
+                for (int i = 0; i < notches.length; i += 1) {
+                    notches[i] = alphabet.toChar(image.getInt());
+                }
+                int[] forward = new int[n];
+                int[] inverse = new int[n];
+                image.asIntBuffer().get(forward).get(inverse);
+                image.position(image.position() + 8 * n);
+                Permutation perm = new Permutation(forward, inverse, alphabet);
+                switch (type) {
+                case 'N':
+                    rotors.add(new FixedRotor(name, perm));
+                    break;
+                case 'R':
+                    rotors.add(new Reflector(name, perm));
+                    break;
+                case 'M':
+                    rotors.add(new MovingRotor(name, perm,
+                                               new String(notches)));
+                    break;
+                default:
+                    throw new enigma.EnigmaException("Rotor type not "
+                                                     + "recognized");
+                }
+            }
+            return new Machine(alphabet, numRotors, pawls, rotors);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException
+                 | NegativeArraySizeException excp) {
+            throw error("configuration image %s truncated", file);
+        }
+    }
+
+    /** Return the LEN chars at the current position of IMAGE, advancing
+     *  past them. */
+    private static String string(ByteBuffer image, int len) {
+        char[] chars = new char[len];
+        image.asCharBuffer().get(chars);
+        image.position(image.position() + 2 * len);
+        return new String(chars);
+    }
+
+    /** Identifies a configuration image ("EnCf"). */
+    private static final int MAGIC = 0x456e4366;
+
+    /** Version of the image layout. */
+    private static final int VERSION = 1;
+
+    /** Size of the header. */
+    private static final int HEADER_SIZE = 24;
+
+}
@@ -0,0 +1,74 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the ConfigImage class.
+ *  @author Edan Bash
+ */
+public class ConfigImageTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /** Return an unconfigured machine with the rotors of the naval
+     *  machine. */
+    private Machine catalog() {
+        return navalMachine(5, 3, "B", "Beta", "I", "II", "VI");
+    }
+
+    /** Set up M as reflector B, rotors Beta, I, II and VI at AXLE, with
+     *  a plugboard, and return it. */
+    private Machine setUp(Machine m) {
+        m.insertRotors(new String[] {"B", "Beta", "I", "II", "VI"});
+        m.setRotors("AXLE");
+        m.setPlugboard(new Permutation("(YF)(ZH)", UPPER));
+        return m;
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        File file = File.createTempFile("config", ".img");
+        file.deleteOnExit();
+        ConfigImage.write(catalog(), file.toPath());
+        assertTrue(ConfigImage.isImage(file.toPath()));
+        Machine loaded = ConfigImage.read(file.toPath());
+        assertEquals("ABCDEFGHIJKLMNOPQRSTUVWXYZ",
+                     loaded.alphabet().getChars());
+        assertEquals(5, loaded.numRotors());
+        assertEquals(3, loaded.numPawls());
+        assertEquals(5, loaded.allRotors().size());
+        String msg = "FROM HIS SHOULDER HIAWATHA TOOK THE CAMERA OF ROSEWOOD";
+        assertEquals(setUp(catalog()).convert(msg),
+                     setUp(loaded).convert(msg));
+    }
+
+    @Test
+    public void testNotImage() throws IOException {
+        File file = File.createTempFile("config", ".conf");
+        file.deleteOnExit();
+        Files.write(file.toPath(), Arrays.asList("ABC", "3 1"));
+        assertFalse(ConfigImage.isImage(file.toPath()));
+    }
+
+    @Test(expected = enigma.EnigmaException.class)
+    public void testTruncated() throws IOException {
+        File file = File.createTempFile("config", ".img");
+        file.deleteOnExit();
+        ConfigImage.write(catalog(), file.toPath());
+        byte[] image = Files.readAllBytes(file.toPath());
+        Files.write(file.toPath(), Arrays.copyOf(image, image.length / 2));
+        ConfigImage.read(file.toPath());
+    }
+
+}
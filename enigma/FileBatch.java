@@ -0,0 +1,267 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static enigma.EnigmaException.*;
+
+/** Processes many input files, each as Main processes its one input file
+ *  (with --nio), in a single run with a single reading of the
+ *  configuration.  Files are processed concurrently, each on its own
+ *  thread from Main.threadPerTaskExecutor (a virtual thread where the
+ *  runtime has them), with a bounded number in flight.  All files share
+ *  the configured rotors and the cache of configured machines.  A file
+ *  that fails is reported, and the others are processed regardless.
+ *  @author Edan Bash
+ */
+final class FileBatch {
+
+    /** Process files as specified by ARGS, which may begin with the
+     *  option
+     *    --jobs=N        process at most N files at once (by default,
+     *                    DEFAULT_JOBS);
+     *  followed by the name of a configuration file (or image) and
+     *  either the name of a manifest or the names of an input and an
+     *  output directory.  Each line of a manifest names an input file
+     *  and the output file for it, separated by whitespace; blank lines
+     *  and lines starting with "#" are ignored, and no output file may be
+     *  named twice or also be an input file.  With directories, each
+     *  regular file in the input directory is processed into the file of
+     *  the same name in the output directory, which is created if
+     *  necessary.  Reports each file that fails on the standard error,
+     *  and then fails if any did. */
+    static void run(String[] args) {
+        int jobs = DEFAULT_JOBS;
+        int first = 0;
+        for (; first < args.length && args[first].startsWith("--");
+             first += 1) {
+            String option = args[first];
+            if (option.startsWith("--jobs=")) {
+                try {
+                    jobs = Integer.parseInt(option.substring(7));
+                } catch (NumberFormatException excp) {
+                    jobs = 0;
+                }
+                if (jobs <= 0) {
+                    throw error("bad job count in %s", option);
+                }
+            } else {
+                throw error("unknown option %s", option);
+            }
+        }
+        List<Path[]> files;
+        if (args.length - first == 2) {
+            files = manifest(args[first + 1]);
+        } else if (args.length - first == 3) {
+            files = directory(args[first + 1], args[first + 2]);
+        } else {
+            throw error("usage: batch [--jobs=N] CONFIG MANIFEST\n"
+                        + "       batch [--jobs=N] CONFIG INDIR OUTDIR");
+        }
+        Main config = new Main(args[first]);
+        FileBatch batch = new FileBatch(config, config.readConfig());
+        List<String> failures = batch.process(files, jobs);
+        for (String failure : failures) {
+            System.err.println(failure);
+        }
+        if (!failures.isEmpty()) {
+            throw error("%d of %d files failed", failures.size(),
+                        files.size());
+        }
+    }
+
+    /** Return the pairs of input and output files listed in the
+     *  manifest named NAME, which must not name any output file twice,
+     *  or name an input file as an output file (which processing would
+     *  truncate before reading it). */
+    static List<Path[]> manifest(String name) {
+        ArrayList<Path[]> result = new ArrayList<>();
+        HashSet<Path> inputs = new HashSet<>(), outputs = new HashSet<>();
+        try {
+            for (String line : Files.readAllLines(Paths.get(name),
+                                                  Charset.defaultCharset())) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] fields = line.split("\\s+");
+                if (fields.length != 2) {
+                    throw error("bad manifest line: %s", line);
+                }
+                Path input = Paths.get(fields[0]),
+                    output = Paths.get(fields[1]);
+                if (!outputs.add(output.toAbsolutePath().normalize())) {
+                    throw error("output file %s named twice in manifest %s",
+                                output, name);
+                }
+                inputs.add(input.toAbsolutePath().normalize());
+                if (Files.exists(output) && Files.exists(input)
+                    && Files.isSameFile(input, output)) {
+                    throw error("%s is both input and output in manifest %s",
+                                output, name);
+                }
+                result.add(new Path[] { input, output });
+            }
+        } catch (IOException | InvalidPathException excp) {
+            throw error("could not read manifest %s", name);
+        }
+        for (Path[] pair : result) {
+            if (inputs.contains(pair[1].toAbsolutePath().normalize())) {
+                throw error("%s is both input and output in manifest %s",
+                            pair[1], name);
+            }
+        }
+        return result;
+    }
+
+    /** Return the pairs of input and output files for the regular files
+     *  in directory INPUT and the files of the same names in directory
+     *  OUTPUT, which is created if it does not exist, in order of
+     *  name. */
+    static List<Path[]> directory(String input, String output) {
+        ArrayList<Path> inputs = new ArrayList<>();
+        Path out;
+        try {
+            Path in = Paths.get(input);
+            out = Paths.get(output);
+            if (Files.isDirectory(out) && Files.isSameFile(in, out)) {
+                throw error("input and output directories are the same");
+            }
+            try (DirectoryStream<Path> dir = Files.newDirectoryStream(in)) {
+                for (Path file : dir) {
+                    if (Files.isRegularFile(file)) {
+                        inputs.add(file);
+                    }
+                }
+            }
+            Files.createDirectories(out);
+        } catch (IOException | InvalidPathException excp) {
+            throw error("could not list %s into %s", input, output);
+        }
+        Collections.sort(inputs);
+        ArrayList<Path[]> result = new ArrayList<>();
+        for (Path file : inputs) {
+            result.add(new Path[] { file, out.resolve(file.getFileName()) });
+        }
+        return result;
+    }
+
+    /** A batch processing files with TEMPLATE, the machine read by
+     *  CONFIG. */
+    FileBatch(Main config, Machine template) {
+        _config = config;
+        _template = template;
+    }
+
+    /** Process each of FILES, pairs of input and output files, with at
+     *  most JOBS in flight at once.  Returns a description of each
+     *  failure, in the order of FILES.  If processing a file throws an
+     *  Error, starts no further files, and throws it once those in
+     *  flight are done. */
+    List<String> process(List<Path[]> files, int jobs) {
+        String[] failures = new String[files.size()];
+        Semaphore slots = new Semaphore(jobs);
+        AtomicReference<Throwable> fatal = new AtomicReference<>();
+        ExecutorService pool = Main.threadPerTaskExecutor();
+        try {
+            for (int i = 0; i < files.size() && fatal.get() == null;
+                 i += 1) {
+                slots.acquireUninterruptibly();
+                int k = i;
+                Path[] pair = files.get(i);
+                pool.execute(() -> {
+                    try {
+                        failures[k] = process(pair[0], pair[1]);
+                    } catch (Throwable excp) {
+                        fatal.compareAndSet(null, excp);
+                    } finally {
+                        slots.release();
+                    }
+                });
+            }
+            slots.acquireUninterruptibly(jobs);
+        } finally {
+            pool.shutdown();
+        }
+        Throwable excp = fatal.get();
+        if (excp instanceof RuntimeException) {
+            throw (RuntimeException) excp;
+        } else if (excp != null) {
+            throw (Error) excp;
+        }
+        ArrayList<String> result = new ArrayList<>();
+        for (String failure : failures) {
+            if (failure != null) {
+                result.add(failure);
+            }
+        }
+        return result;
+    }
+
+    /** Process the file INPUT into the file OUTPUT, returning null if
+     *  this succeeds, and otherwise a description of the error. */
+    private String process(Path input, Path output) {
+        try (FileChannel in = FileChannel.open(input);
+             FileChannel out = FileChannel.open(output,
+                     StandardOpenOption.CREATE,
+                     StandardOpenOption.TRUNCATE_EXISTING,
+                     StandardOpenOption.WRITE)) {
+            Charset charset = Charset.defaultCharset();
+            new Main(_config, new LineReader(in, charset),
+                     new GroupWriter(out, charset))
+                .processLines(_template.copy());
+            return null;
+        } catch (IOException excp) {
+            return String.format("Error: %s: %s", input, describe(excp));
+        } catch (EnigmaException excp) {
+            return String.format("Error: %s: %s", input, excp.getMessage());
+        } catch (RuntimeException excp) {
+            return String.format("Error: %s: %s", input, excp);
+        }
+    }
+
+    /** Return a description of EXCP, a failure to open or use a file,
+     *  naming the file and the cause. */
+    private static String describe(IOException excp) {
+        String cause = excp.getClass().getSimpleName();
+        if (excp instanceof FileSystemException) {
+            FileSystemException failure = (FileSystemException) excp;
+            if (failure.getReason() != null) {
+                cause = failure.getReason();
+            }
+            if (failure.getFile() != null) {
+                return String.format("could not open %s: %s",
+                                     failure.getFile(), cause);
+            }
+        } else if (excp.getMessage() != null) {
+            cause = excp.getMessage();
+        }
+        return String.format("could not read or write: %s", cause);
+    }
+
+    /** Default bound on the number of files in flight. */
+    static final int DEFAULT_JOBS = 32;
+
+    /** Reader of the configuration, whose cache of configured machines
+     *  the files share. */
+    private final Main _config;
+
+    /** The machine read from the configuration, copied for each file. */
+    private final Machine _template;
+
+}
@@ -0,0 +1,201 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/** The suite of all JUnit tests for the FileBatch class.
+ *  @author Edan Bash
+ */
+public class FileBatchTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(30);
+
+    /** Return a new temporary directory containing a configuration file
+     *  named "conf", and an input directory named "in" holding COUNT
+     *  good input files and one bad one, "bad". */
+    private Path setUp(int count) throws IOException {
+        Path dir = Files.createTempDirectory("batch");
+        dir.toFile().deleteOnExit();
+        write(dir.resolve("conf"),
+              "ABCDEFGHIJKLMNOPQRSTUVWXYZ",
+              " 4 3",
+              " I MQ      (AELTPHQXRU) (BKNW) (CMOY) (DFG) (IV) (JZ) (S)",
+              " II ME     (FIXVYOMW) (CDQJ) (EUSH) (BL) (ZAR) (GT) (KN) (P)",
+              " III MV    (ABDHPEJT) (CFLVMZOYQIRWUKXSG) (N)",
+              " B R       (AE) (BN) (CK) (DQ) (FU) (GY) (HW) (IJ) (LO) "
+              + "(MP) (RX) (SZ) (TV)");
+        Path in = Files.createDirectory(dir.resolve("in"));
+        in.toFile().deleteOnExit();
+        for (int i = 0; i < count; i += 1) {
+            write(in.resolve("m" + i),
+                  "* B I II III " + (char) ('A' + i % 26) + "XL (AQ)",
+                  "HELLO WORLD", "",
+                  "* B III II I AAA", "FROM HIS SHOULDER HIAWATHA");
+        }
+        write(in.resolve("bad"), "HELLO WORLD");
+        return dir;
+    }
+
+    /** Write LINES to FILE, to be deleted on exit. */
+    private void write(Path file, String... lines) throws IOException {
+        Files.write(file, Arrays.asList(lines));
+        file.toFile().deleteOnExit();
+    }
+
+    /** Return what Main, given ARGS, writes to its output file, the last
+     *  of ARGS. */
+    private byte[] expected(String... args) throws IOException {
+        File out = File.createTempFile("batch", ".out");
+        out.deleteOnExit();
+        String[] all = Arrays.copyOf(args, args.length + 1);
+        all[args.length] = out.getPath();
+        Main.main(all);
+        return Files.readAllBytes(out.toPath());
+    }
+
+    @Test
+    public void testDirectory() throws IOException {
+        Path dir = setUp(40);
+        String conf = dir.resolve("conf").toString();
+        List<Path[]> files = FileBatch.directory(dir.resolve("in").toString(),
+                                                 dir.resolve("out")
+                                                 .toString());
+        assertEquals(41, files.size());
+        assertEquals("bad", files.get(0)[0].getFileName().toString());
+        Main config = new Main(conf);
+        FileBatch batch = new FileBatch(config, config.readConfig());
+        List<String> failures = batch.process(files, 4);
+        assertEquals(1, failures.size());
+        assertTrue(failures.get(0).contains("bad: Bad config file"));
+        for (Path[] pair : files.subList(1, files.size())) {
+            pair[1].toFile().deleteOnExit();
+            assertArrayEquals(expected("--nio", conf, pair[0].toString()),
+                              Files.readAllBytes(pair[1]));
+        }
+        files.get(0)[1].toFile().deleteOnExit();
+        dir.resolve("out").toFile().deleteOnExit();
+    }
+
+    @Test
+    public void testManifest() throws IOException {
+        Path dir = setUp(1);
+        Path manifest = dir.resolve("manifest");
+        Path out = dir.resolve("m0.out");
+        write(manifest, "# comment", "",
+              "  " + dir.resolve("in").resolve("m0") + "\t" + out + " ",
+              dir.resolve("missing") + " " + dir.resolve("x.out"));
+        out.toFile().deleteOnExit();
+        List<Path[]> files = FileBatch.manifest(manifest.toString());
+        assertEquals(2, files.size());
+        assertEquals(out, files.get(0)[1]);
+        try {
+            FileBatch.run(new String[] {"--jobs=1",
+                                        dir.resolve("conf").toString(),
+                                        manifest.toString()});
+            fail("expected an error");
+        } catch (EnigmaException excp) {
+            assertEquals("1 of 2 files failed", excp.getMessage());
+        }
+        assertArrayEquals(expected("--nio", dir.resolve("conf").toString(),
+                                   dir.resolve("in").resolve("m0")
+                                   .toString()),
+                          Files.readAllBytes(out));
+    }
+
+    @Test
+    public void testMissingInput() throws IOException {
+        Path dir = setUp(0);
+        Path missing = dir.resolve("missing");
+        Main config = new Main(dir.resolve("conf").toString());
+        FileBatch batch = new FileBatch(config, config.readConfig());
+        List<String> failures = batch.process(Collections.singletonList(
+            new Path[] { missing, dir.resolve("missing.out") }), 1);
+        assertEquals(Arrays.asList("Error: " + missing + ": could not open "
+                                   + missing + ": NoSuchFileException"),
+                     failures);
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testDuplicateOutput() throws IOException {
+        Path dir = setUp(0);
+        write(dir.resolve("manifest"), "a " + dir.resolve("x.out"),
+              "b " + dir.resolve("in").resolve("..").resolve("x.out"));
+        FileBatch.manifest(dir.resolve("manifest").toString());
+    }
+
+    @Test
+    public void testInputIsOutput() throws IOException {
+        Path dir = setUp(1);
+        Path msg = dir.resolve("in").resolve("m0");
+        byte[] contents = Files.readAllBytes(msg);
+        Path link = dir.resolve("link");
+        Files.createSymbolicLink(link, msg);
+        link.toFile().deleteOnExit();
+        String[][] manifests = {
+            { msg + " " + dir.resolve("in").resolve("..").resolve("in")
+              .resolve("m0") },
+            { msg + " " + link },
+            { msg + " " + dir.resolve("a"), dir.resolve("a") + " " + msg },
+        };
+        for (String[] lines : manifests) {
+            write(dir.resolve("manifest"), lines);
+            try {
+                FileBatch.manifest(dir.resolve("manifest").toString());
+                fail("accepted " + Arrays.toString(lines));
+            } catch (EnigmaException excp) {
+                assertTrue(excp.getMessage(),
+                           excp.getMessage().contains("both input and"));
+            }
+        }
+        assertArrayEquals(contents, Files.readAllBytes(msg));
+    }
+
+    @Test
+    public void testErrorReachesCaller() throws IOException {
+        Path dir = setUp(4);
+        Main config = new Main(dir.resolve("conf").toString());
+        Machine template = config.readConfig();
+        Machine failing = new Machine(template.alphabet(),
+                                      template.numRotors(),
+                                      template.numPawls(),
+                                      template.allRotors()) {
+            @Override
+            Machine copy() {
+                throw new AssertionError("copy failed");
+            }
+        };
+        FileBatch batch = new FileBatch(config, failing);
+        List<Path[]> files = FileBatch.directory(
+            dir.resolve("in").toString(), dir.resolve("out").toString());
+        dir.resolve("out").toFile().deleteOnExit();
+        try {
+            batch.process(files, 2);
+            fail("error was not thrown");
+        } catch (AssertionError excp) {
+            assertEquals("copy failed", excp.getMessage());
+        }
+        for (Path[] pair : files) {
+            pair[1].toFile().deleteOnExit();
+        }
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testBadManifest() throws IOException {
+        Path dir = setUp(0);
+        write(dir.resolve("manifest"), "one two three");
+        FileBatch.manifest(dir.resolve("manifest").toString());
+    }
+
+}
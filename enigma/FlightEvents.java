@@ -0,0 +1,105 @@
+package enigma;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/** The JDK Flight Recorder events that Main emits: SetupEvent, for each
+ *  settings line, and ConvertEvent, for each message of at least
+ *  LARGE_MESSAGE characters.  Loading an event class loads much of the
+ *  jdk.jfr module, which would more than double the start-up time of a
+ *  short run, so Main refers to this class only through static methods
+ *  that take and return plain Objects, and calls them only when active()
+ *  is true: when metrics are kept or the flight recorder has been
+ *  started.
+ *  @author Edan Bash
+ */
+final class FlightEvents {
+
+    /** Not instantiable. */
+    private FlightEvents() {
+    }
+
+    /** Returns true iff the flight recorder has been started, so that
+     *  events may be recorded.  Loads only the FlightRecorder class. */
+    static boolean recorderStarted() {
+        return FlightRecorder.isInitialized();
+    }
+
+    /** Return a begun event for applying a settings line. */
+    static Object beginSetUp() {
+        SetupEvent event = new SetupEvent();
+        event.begin();
+        return event;
+    }
+
+    /** Commit EVENT, as returned by beginSetUp, for the settings line
+     *  SETTINGS, which was found in the cache of configured machines iff
+     *  CACHED. */
+    static void endSetUp(Object event, String settings, boolean cached) {
+        SetupEvent setUp = (SetupEvent) event;
+        if (setUp.shouldCommit()) {
+            setUp.settings = settings;
+            setUp.cached = cached;
+            setUp.commit();
+        }
+    }
+
+    /** Return a begun event for converting a message of LENGTH
+     *  characters, or null if the message is shorter than
+     *  LARGE_MESSAGE. */
+    static Object beginConvert(int length) {
+        if (length < LARGE_MESSAGE) {
+            return null;
+        }
+        ConvertEvent event = new ConvertEvent();
+        event.begin();
+        return event;
+    }
+
+    /** Commit EVENT, as returned by beginConvert, if it is not null, for
+     *  a message of LENGTH characters. */
+    static void endConvert(Object event, int length) {
+        ConvertEvent convert = (ConvertEvent) event;
+        if (convert != null && convert.shouldCommit()) {
+            convert.length = length;
+            convert.commit();
+        }
+    }
+
+    /** A flight recorder event for applying a settings line. */
+    @Name("enigma.SetUp")
+    @Label("Enigma Setup")
+    @Category("Enigma")
+    @Description("Configuration of a machine by a settings line")
+    static final class SetupEvent extends Event {
+        /** The settings line. */
+        @Label("Settings")
+        String settings;
+
+        /** Whether the line was found in the cache of configured
+         *  machines. */
+        @Label("Cached")
+        boolean cached;
+    }
+
+    /** A flight recorder event for converting a message of at least
+     *  LARGE_MESSAGE characters. */
+    @Name("enigma.Convert")
+    @Label("Enigma Conversion")
+    @Category("Enigma")
+    @Description("Conversion of a large message line")
+    static final class ConvertEvent extends Event {
+        /** The length of the message. */
+        @Label("Length")
+        int length;
+    }
+
+    /** Length of the shortest message whose conversion is a
+     *  ConvertEvent. */
+    static final int LARGE_MESSAGE = 1 << 16;
+
+}
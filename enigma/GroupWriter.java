@@ -0,0 +1,117 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+import static enigma.EnigmaException.*;
+
+/** Writes messages to a channel in groups of five characters, buffering
+ *  its output in large blocks.
+ *  @author Edan Bash
+ */
+final class GroupWriter {
+
+    /** A writer to SINK, encoding with CHARSET. */
+    GroupWriter(WritableByteChannel sink, Charset charset) {
+        this(sink, charset, BUFFER_SIZE);
+    }
+
+    /** A writer to SINK, encoding with CHARSET, that buffers BUFFERSIZE
+     *  characters, for sinks such as sockets that are flushed after each
+     *  line.  Buffers smaller than the default are on the heap, so that
+     *  short-lived writers leave no direct buffer for the Cleaner. */
+    GroupWriter(WritableByteChannel sink, Charset charset, int bufferSize) {
+        _sink = sink;
+        _encoder = charset.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        _newline = System.lineSeparator().toCharArray();
+        bufferSize = Math.max(bufferSize, GROUP + 1 + _newline.length);
+        _buf = new char[bufferSize];
+        _bytes = bufferSize < BUFFER_SIZE
+            ? ByteBuffer.allocate(2 * bufferSize)
+            : ByteBuffer.allocateDirect(2 * bufferSize);
+    }
+
+    /** Write the LEN characters of MSG starting at OFF as one line, in
+     *  groups of five, each complete group followed by a blank, as
+     *  Main has always printed them. */
+    void writeLine(char[] msg, int off, int len) {
+        for (int i = 0; i < len; i += GROUP) {
+            int n = Math.min(GROUP, len - i);
+            if (_len + GROUP + 1 > _buf.length) {
+                flushBuffer();
+            }
+            System.arraycopy(msg, off + i, _buf, _len, n);
+            _len += n;
+            if (n == GROUP) {
+                _buf[_len] = ' ';
+                _len += 1;
+            }
+        }
+        if (_len + _newline.length > _buf.length) {
+            flushBuffer();
+        }
+        System.arraycopy(_newline, 0, _buf, _len, _newline.length);
+        _len += _newline.length;
+    }
+
+    /** Write out everything buffered so far. */
+    void flush() {
+        flushBuffer();
+    }
+
+    /** Encode and write the contents of _buf. */
+    private void flushBuffer() {
+        CharBuffer chars = CharBuffer.wrap(_buf, 0, _len);
+        try {
+            while (true) {
+                CoderResult result = _encoder.encode(chars, _bytes, false);
+                _bytes.flip();
+                while (_bytes.hasRemaining()) {
+                    _sink.write(_bytes);
+                }
+                _bytes.clear();
+                if (result.isUnderflow()) {
+                    break;
+                }
+            }
+        } catch (IOException excp) {
+            throw error("could not write output");
+        }
+        int rest = chars.remaining();
+        System.arraycopy(_buf, chars.position(), _buf, 0, rest);
+        _len = rest;
+    }
+
+    /** Number of characters in a group. */
+    private static final int GROUP = 5;
+
+    /** Default size of the character buffer. */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** Destination of output. */
+    private final WritableByteChannel _sink;
+
+    /** Encodes _buf into _bytes. */
+    private final CharsetEncoder _encoder;
+
+    /** Characters not yet written. */
+    private final char[] _buf;
+
+    /** Number of characters in _buf. */
+    private int _len;
+
+    /** Encoded bytes not yet written. */
+    private final ByteBuffer _bytes;
+
+    /** Characters ending each line. */
+    private final char[] _newline;
+
+}
@@ -0,0 +1,96 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+
+/** The suite of all JUnit tests for the GroupWriter class.
+ *  @author Edan Bash
+ */
+public class GroupWriterTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /** Line separator. */
+    private static final String NL = System.lineSeparator();
+
+    /** Return MSG in groups of five, as Main.printMessageLine prints
+     *  it. */
+    private String grouped(String msg) {
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < msg.length(); i += 1) {
+            result.append(msg.charAt(i));
+            if ((i + 1) % 5 == 0) {
+                result.append(' ');
+            }
+        }
+        return result.append(NL).toString();
+    }
+
+    /** Return what a GroupWriter writes for MSGS, one line each. */
+    private String written(String... msgs) {
+        return written(1 << 16, msgs);
+    }
+
+    /** Return what a GroupWriter buffering SIZE characters writes for
+     *  MSGS, one line each. */
+    private String written(int size, String... msgs) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        GroupWriter writer = new GroupWriter(Channels.newChannel(bytes),
+                                             StandardCharsets.UTF_8, size);
+        for (String msg : msgs) {
+            char[] padded = ("xx" + msg + "yy").toCharArray();
+            writer.writeLine(padded, 2, msg.length());
+        }
+        writer.flush();
+        return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testGroups() {
+        String[] msgs = { "", "ABCD", "ABCDE", "ABCDEF", "ABCDEFGHIJ",
+                          "ABCDEFGHIJK" };
+        for (String msg : msgs) {
+            assertEquals(msg, grouped(msg), written(msg));
+        }
+        assertEquals("ABCDE F" + NL + NL + "GH" + NL,
+                     written("ABCDEF", "", "GH"));
+    }
+
+    @Test
+    public void testLargeOutput() {
+        StringBuilder msg = new StringBuilder();
+        for (int i = 0; i < 300001; i += 1) {
+            msg.append((char) ('A' + i % 26));
+        }
+        String[] msgs = { msg.toString(), "XYZ", msg.substring(7) };
+        StringBuilder expected = new StringBuilder();
+        for (String m : msgs) {
+            expected.append(grouped(m));
+        }
+        assertEquals(expected.toString(), written(msgs));
+    }
+
+    @Test
+    public void testSmallBuffers() {
+        String[] msgs = { "ABCDEFGHIJK", "",
+                          "\u00e9\u00e9\u00e9\u00e9\u00e9\u00e9", "XYZ" };
+        for (int size : new int[] { 1, 8, 13, 1024 }) {
+            assertEquals(written(msgs), written(size, msgs));
+        }
+    }
+
+    @Test
+    public void testEncoding() {
+        assertEquals("\u00e9\u00e9\u00e9\u00e9\u00e9 \u00e9" + NL,
+                     written("\u00e9\u00e9\u00e9\u00e9\u00e9\u00e9"));
+    }
+
+}
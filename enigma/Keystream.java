@@ -0,0 +1,314 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import static enigma.EnigmaException.*;
+
+/** The keystream of a configured Enigma machine: the complete permutation
+ *  (plugboard included) that the machine applies at each position of a
+ *  message, tabulated over one full period of its stepping.  Since the
+ *  stepping does not depend on the message, converting a character is
+ *  then a single table lookup.  The table is kept off-heap, and may be
+ *  written to and mapped from a file so that several processes can
+ *  share it.  Main does not use keystreams: tabulating one costs a full
+ *  period of stepping for each settings line, far more than converting
+ *  the short messages that typically follow one.
+ *  @author Edan Bash
+ */
+final class Keystream {
+
+    /** Return the keystream of M from its current position, tabulated in
+     *  memory.  M is left in the position it started in. */
+    static Keystream build(Machine m) {
+        Period period = period(m);
+        ByteBuffer table =
+            ByteBuffer.allocateDirect(tableBytes(m, period));
+        fill(m, period, table);
+        return new Keystream(m.alphabet(), table);
+    }
+
+    /** Return the keystream of M from its current position, tabulated in
+     *  a new file named FILE (replacing any existing one) that is mapped
+     *  into memory.  M is left in the position it started in. */
+    static Keystream build(Machine m, Path file) {
+        Period period = period(m);
+        try (FileChannel channel =
+                 FileChannel.open(file, StandardOpenOption.CREATE,
+                                  StandardOpenOption.TRUNCATE_EXISTING,
+                                  StandardOpenOption.READ,
+                                  StandardOpenOption.WRITE)) {
+            MappedByteBuffer table =
+                channel.map(FileChannel.MapMode.READ_WRITE, 0,
+                            tableBytes(m, period));
+            fill(m, period, table);
+            table.force();
+            return new Keystream(m.alphabet(), table);
+        } catch (IOException excp) {
+            throw error("could not write keystream to %s", file);
+        }
+    }
+
+    /** Return the keystream previously written to FILE by build for a
+     *  machine configured and positioned as M is now. */
+    static Keystream load(Machine m, Path file) {
+        try (FileChannel channel = FileChannel.open(file)) {
+            ByteBuffer table =
+                channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (table.limit() < HEADER_SIZE
+                || table.getInt(0) != MAGIC
+                || table.getInt(VERSION_OFFSET) != VERSION
+                || table.getLong(FINGERPRINT_OFFSET) != fingerprint(m)) {
+                throw error("keystream in %s does not match machine", file);
+            }
+            int n = m.alphabet().size(), width = width(n);
+            long tail = table.getInt(TAIL_OFFSET),
+                cycle = table.getInt(CYCLE_OFFSET);
+            if (table.getInt(SIZE_OFFSET) != n
+                || table.getInt(WIDTH_OFFSET) != width
+                || tail < 0 || cycle <= 0
+                || table.limit() < HEADER_SIZE + (tail + cycle) * n * width) {
+                throw error("keystream in %s is truncated or corrupt", file);
+            }
+            return new Keystream(m.alphabet(), table);
+        } catch (IOException excp) {
+            throw error("could not read keystream from %s", file);
+        }
+    }
+
+    /** A keystream over ALPHABET whose header and entries are in
+     *  TABLE, positioned at its start. */
+    private Keystream(Alphabet alphabet, ByteBuffer table) {
+        _alphabet = alphabet;
+        _table = table;
+        _size = table.getInt(SIZE_OFFSET);
+        _width = table.getInt(WIDTH_OFFSET);
+        _tail = table.getInt(TAIL_OFFSET);
+        _end = _tail + table.getInt(CYCLE_OFFSET);
+    }
+
+    /** Return the number of positions I tabulate (the positions before
+     *  the machine's stepping becomes periodic, plus one period). */
+    int length() {
+        return _end;
+    }
+
+    /** Position me at the start of the Nth character of the message
+     *  (numbering from 0).  N must not be negative. */
+    void seek(long n) {
+        if (n < 0) {
+            throw error("negative keystream position %d", n);
+        } else if (n < _end) {
+            _index = (int) n;
+        } else {
+            _index = (int) (_tail + (n - _tail) % (_end - _tail));
+        }
+    }
+
+    /** Returns the result of converting the input character C (as an
+     *  index in the range 0..alphabet size - 1) at my current position,
+     *  and moves to the next position. */
+    int convert(int c) {
+        int entry = HEADER_SIZE + (_index * _size + c) * _width;
+        int result;
+        if (_width == 1) {
+            result = _table.get(entry) & 0xff;
+        } else {
+            result = _table.getChar(entry);
+        }
+        _index += 1;
+        if (_index == _end) {
+            _index = _tail;
+        }
+        return result;
+    }
+
+    /** Converts the LEN characters of SRC starting at OFF into DST,
+     *  starting at DSTOFF, skipping whitespace, as for
+     *  Machine.convert.  Returns the number of characters written. */
+    int convert(char[] src, int off, int len, char[] dst, int dstOff) {
+        int j = dstOff;
+        for (int i = off, end = off + len; i < end; i += 1) {
+            char c = src[i];
+            int index = _alphabet.toInt(c);
+            if (index < 0) {
+                if (Character.isWhitespace(c)) {
+                    continue;
+                }
+                throw new enigma.EnigmaException(c + " not in alphabet");
+            }
+            dst[j] = _alphabet.toChar(convert(index));
+            j += 1;
+        }
+        return j - dstOff;
+    }
+
+    /** The positions of a machine's stepping: TAIL positions that are
+     *  never revisited, followed by a cycle of CYCLE positions. */
+    private static final class Period {
+        /** Positions before the cycle. */
+        private int tail;
+        /** Length of the cycle. */
+        private int cycle;
+    }
+
+    /** Return the period of M's stepping from its current position,
+     *  leaving M where it started. */
+    private static Period period(Machine m) {
+        Rotor[] rotors = m.activeRotors();
+        int n = m.alphabet().size();
+        int first = m.numRotors() - m.numPawls();
+        long states = 1;
+        for (int i = first; i < rotors.length; i += 1) {
+            states *= n;
+            if (states > MAX_POSITIONS) {
+                throw error("too many rotor positions to tabulate");
+            }
+        }
+        int[] saved = settings(rotors);
+        int[] seen = new int[(int) states];
+        Arrays.fill(seen, -1);
+        Period result = new Period();
+        for (int count = 0; true; count += 1) {
+            m.advanceRotors();
+            int key = 0;
+            for (int i = first; i < rotors.length; i += 1) {
+                key = key * n + rotors[i].setting();
+            }
+            if (seen[key] >= 0) {
+                result.tail = seen[key];
+                result.cycle = count - seen[key];
+                break;
+            }
+            seen[key] = count;
+        }
+        restore(rotors, saved);
+        return result;
+    }
+
+    /** Return the number of bytes needed to tabulate PERIOD positions of
+     *  M. */
+    private static int tableBytes(Machine m, Period period) {
+        int n = m.alphabet().size();
+        long bytes = HEADER_SIZE
+            + (long) (period.tail + period.cycle) * n * width(n);
+        if (bytes > Integer.MAX_VALUE) {
+            throw error("keystream too large to tabulate");
+        }
+        return (int) bytes;
+    }
+
+    /** Write the header and the permutations at each position of
+     *  PERIOD of M into TABLE, leaving M where it started. */
+    private static void fill(Machine m, Period period, ByteBuffer table) {
+        int n = m.alphabet().size();
+        int width = width(n);
+        table.putInt(0, MAGIC);
+        table.putInt(VERSION_OFFSET, VERSION);
+        table.putInt(SIZE_OFFSET, n);
+        table.putInt(WIDTH_OFFSET, width);
+        table.putInt(TAIL_OFFSET, period.tail);
+        table.putInt(CYCLE_OFFSET, period.cycle);
+        table.putLong(FINGERPRINT_OFFSET, fingerprint(m));
+        int[] saved = settings(m.activeRotors());
+        int entry = HEADER_SIZE;
+        for (int p = 0; p < period.tail + period.cycle; p += 1) {
+            m.advanceRotors();
+            for (int c = 0; c < n; c += 1) {
+                if (width == 1) {
+                    table.put(entry, (byte) m.translate(c));
+                } else {
+                    table.putChar(entry, (char) m.translate(c));
+                }
+                entry += width;
+            }
+        }
+        restore(m.activeRotors(), saved);
+    }
+
+    /** Return a hash identifying the alphabet, rotors, settings and
+     *  plugboard of M. */
+    static long fingerprint(Machine m) {
+        long h = FNV_BASIS;
+        h = (h ^ m.alphabet().getChars().hashCode()) * FNV_PRIME;
+        for (Rotor r : m.activeRotors()) {
+            h = (h ^ r.name().hashCode()) * FNV_PRIME;
+            h = (h ^ r.setting()) * FNV_PRIME;
+            h = (h ^ r.ringSetting()) * FNV_PRIME;
+        }
+        Permutation plugboard = m.plugboard().permutation();
+        for (int i = 0; i < plugboard.size(); i += 1) {
+            h = (h ^ plugboard.permute(i)) * FNV_PRIME;
+        }
+        return h;
+    }
+
+    /** Return the number of bytes used for each entry of a table for an
+     *  alphabet of size N. */
+    private static int width(int n) {
+        return n <= 256 ? 1 : 2;
+    }
+
+    /** Return the settings of ROTORS. */
+    private static int[] settings(Rotor[] rotors) {
+        int[] result = new int[rotors.length];
+        for (int i = 0; i < rotors.length; i += 1) {
+            result[i] = rotors[i].setting();
+        }
+        return result;
+    }
+
+    /** Return ROTORS to SETTINGS. */
+    private static void restore(Rotor[] rotors, int[] settings) {
+        for (int i = 1; i < rotors.length; i += 1) {
+            rotors[i].set(settings[i]);
+        }
+    }
+
+    /** Identifies a keystream file ("EnKS"). */
+    private static final int MAGIC = 0x456e4b53;
+
+    /** Version of the keystream file layout. */
+    private static final int VERSION = 1;
+
+    /** Offsets of the header fields. */
+    private static final int VERSION_OFFSET = 4, SIZE_OFFSET = 8,
+        WIDTH_OFFSET = 12, TAIL_OFFSET = 16, CYCLE_OFFSET = 20,
+        FINGERPRINT_OFFSET = 24, HEADER_SIZE = 32;
+
+    /** Largest number of moving rotor positions we will search for a
+     *  period. */
+    private static final long MAX_POSITIONS = 1 << 24;
+
+    /** Constants for the FNV-1a hash used in fingerprints. */
+    private static final long FNV_BASIS = 0xcbf29ce484222325L,
+        FNV_PRIME = 0x100000001b3L;
+
+    /** Alphabet of the machine I was built from. */
+    private final Alphabet _alphabet;
+
+    /** Header followed by, for each position, the image of each
+     *  character. */
+    private final ByteBuffer _table;
+
+    /** Size of my alphabet. */
+    private final int _size;
+
+    /** Bytes per table entry. */
+    private final int _width;
+
+    /** First position of the repeating cycle. */
+    private final int _tail;
+
+    /** Number of positions tabulated. */
+    private final int _end;
+
+    /** Current position. */
+    private int _index;
+
+}
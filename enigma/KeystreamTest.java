@@ -0,0 +1,100 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Keystream class.
+ *  @author Edan Bash
+ */
+public class KeystreamTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /** Return a machine with reflector B, rotors Beta, I, II and III in
+     *  SETTING, and plugboard PLUGS. */
+    private Machine machine(String setting, String plugs) {
+        Machine m = navalMachine(5, 3, "B", "Beta", "I", "II", "III");
+        m.insertRotors(new String[] {"B", "Beta", "I", "II", "III"});
+        m.setRotors(setting);
+        m.setPlugboard(new Permutation(plugs, UPPER));
+        return m;
+    }
+
+    /** Check that K converts N characters as M does. */
+    private void checkAgainst(Machine m, Keystream k, int n) {
+        for (int i = 0; i < n; i += 1) {
+            int c = (i * 7) % 26;
+            assertEquals("position " + i, m.convert(c), k.convert(c));
+        }
+    }
+
+    @Test
+    public void testMatchesMachine() {
+        Keystream k = Keystream.build(machine("AXLE", "(YF)(ZH)"));
+        assertEquals(26 * 25 * 26, k.length());
+        checkAgainst(machine("AXLE", "(YF)(ZH)"), k, 2 * k.length() + 10);
+    }
+
+    @Test
+    public void testSeek() {
+        Keystream k = Keystream.build(machine("AAAA", "(TD)(KC)(JZ)"));
+        Machine m = machine("AAAA", "(TD)(KC)(JZ)");
+        m.convert("I WAS SCARED OF CODING IN JAVA");
+        k.seek(24);
+        char[] src = "I WAS SCARED OF USING GIT".toCharArray();
+        char[] dst = new char[src.length];
+        int n = k.convert(src, 0, src.length, dst, 0);
+        assertEquals(m.convert("I WAS SCARED OF USING GIT"),
+                     new String(dst, 0, n));
+        k.seek(3L * k.length() + 5);
+        m = machine("AAAA", "(TD)(KC)(JZ)");
+        for (int i = 0; i < 3 * k.length() + 5; i += 1) {
+            m.advanceRotors();
+        }
+        checkAgainst(m, k, 100);
+    }
+
+    @Test
+    public void testFile() throws IOException {
+        File file = File.createTempFile("keystream", ".bin");
+        file.deleteOnExit();
+        Keystream.build(machine("BETA", "(AB)"), file.toPath());
+        Keystream k = Keystream.load(machine("BETA", "(AB)"), file.toPath());
+        checkAgainst(machine("BETA", "(AB)"), k, 1000);
+    }
+
+    @Test(expected = enigma.EnigmaException.class)
+    public void testFileMismatch() throws IOException {
+        File file = File.createTempFile("keystream", ".bin");
+        file.deleteOnExit();
+        Keystream.build(machine("BETA", "(AB)"), file.toPath());
+        Keystream.load(machine("BETA", "(AC)"), file.toPath());
+    }
+
+    @Test(expected = enigma.EnigmaException.class)
+    public void testFileTruncated() throws IOException {
+        File file = File.createTempFile("keystream", ".bin");
+        file.deleteOnExit();
+        Keystream.build(machine("BETA", "(AB)"), file.toPath());
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(raf.length() - 1);
+        }
+        Keystream.load(machine("BETA", "(AB)"), file.toPath());
+    }
+
+    @Test(expected = enigma.EnigmaException.class)
+    public void testNegativeSeek() {
+        Keystream.build(machine("BETA", "(AB)")).seek(-1);
+    }
+
+}
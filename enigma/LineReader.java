@@ -0,0 +1,210 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+import static enigma.EnigmaException.*;
+
+/** Splits a channel into lines, without regular expressions and without
+ *  allocating per line.  Lines are delimited as by a Scanner using the
+ *  delimiter "\n": a single newline at the very start of the input is
+ *  skipped, and an empty line after the final newline is not reported.
+ *  Files that fit are memory-mapped rather than read.  (Pipes, which
+ *  may also be FileChannels, report a size of 0 and are read.)
+ *  @author Edan Bash
+ */
+final class LineReader {
+
+    /** A reader of the lines of SOURCE, decoded using CHARSET. */
+    LineReader(ReadableByteChannel source, Charset charset) {
+        this(source, charset, BUFFER_SIZE);
+    }
+
+    /** A reader of the lines of SOURCE, decoded using CHARSET, with
+     *  buffers of BUFFERSIZE characters and bytes, for sources such as
+     *  sockets that deliver little at a time.  The character buffer
+     *  grows to hold longer lines.  Buffers smaller than the default are
+     *  on the heap, so that short-lived readers leave no direct buffer
+     *  for the Cleaner. */
+    LineReader(ReadableByteChannel source, Charset charset, int bufferSize) {
+        _source = source;
+        _decoder = charset.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        _buf = new char[Math.max(1, bufferSize)];
+        try {
+            if (source instanceof FileChannel
+                && ((FileChannel) source).size() > 0
+                && ((FileChannel) source).size() <= Integer.MAX_VALUE) {
+                FileChannel file = (FileChannel) source;
+                _bytes = file.map(FileChannel.MapMode.READ_ONLY, 0,
+                                  file.size());
+                _inputDone = true;
+            }
+        } catch (IOException excp) {
+            _bytes = null;
+        }
+        if (_bytes == null) {
+            _bytes = bufferSize < BUFFER_SIZE
+                ? ByteBuffer.allocate(Math.max(MIN_BYTES, bufferSize))
+                : ByteBuffer.allocateDirect(bufferSize);
+            _bytes.flip();
+        }
+    }
+
+    /** Advance to the next line, returning false if there is none. */
+    boolean next() {
+        if (_start < 0) {
+            fill();
+            if (_limit > 0 && _buf[0] == '\n') {
+                _pos = 1;
+            }
+        }
+        int scan = _pos;
+        while (true) {
+            for (int i = scan; i < _limit; i += 1) {
+                if (_buf[i] == '\n') {
+                    _start = _pos;
+                    _end = i;
+                    _pos = i + 1;
+                    return true;
+                }
+            }
+            scan = _limit - _pos;
+            if (!fill()) {
+                if (_pos < _limit) {
+                    _start = _pos;
+                    _end = _limit;
+                    _pos = _limit;
+                    return true;
+                }
+                _start = _end = _pos;
+                return false;
+            }
+            scan += _pos;
+        }
+    }
+
+    /** Return the buffer holding the current line. */
+    char[] buffer() {
+        return _buf;
+    }
+
+    /** Return the index in buffer() of the first character of the current
+     *  line. */
+    int start() {
+        return _start;
+    }
+
+    /** Return the index in buffer() just past the last character of the
+     *  current line (not including its newline). */
+    int end() {
+        return _end;
+    }
+
+    /** Return the current line as a String. */
+    String line() {
+        return new String(_buf, _start, _end - _start);
+    }
+
+    /** Returns true iff the current line is a settings line; that is,
+     *  it matches the regular expression "\\*.+". */
+    boolean isSettings() {
+        if (_end - _start < 2 || _buf[_start] != '*') {
+            return false;
+        }
+        for (int i = _start + 1; i < _end; i += 1) {
+            char c = _buf[i];
+            if (c == '\r' || c == '\u0085' || c == '\u2028'
+                || c == '\u2029') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Move the unread characters to the front of _buf, growing it if
+     *  it is full, and decode more input after them.  Returns false if
+     *  the input is exhausted. */
+    private boolean fill() {
+        if (_pos > 0) {
+            System.arraycopy(_buf, _pos, _buf, 0, _limit - _pos);
+            _limit -= _pos;
+            _pos = 0;
+        }
+        if (_limit == _buf.length) {
+            char[] bigger = new char[2 * _buf.length];
+            System.arraycopy(_buf, 0, bigger, 0, _limit);
+            _buf = bigger;
+        }
+        CharBuffer out = CharBuffer.wrap(_buf, _limit, _buf.length - _limit);
+        try {
+            while (!_eof && out.position() == _limit) {
+                if (!_inputDone) {
+                    _bytes.compact();
+                    int n = _source.read(_bytes);
+                    _bytes.flip();
+                    _inputDone = n < 0;
+                }
+                CoderResult result = _decoder.decode(_bytes, out, _inputDone);
+                if (result.isError()) {
+                    result.throwException();
+                }
+                if (_inputDone && result.isUnderflow()) {
+                    _decoder.flush(out);
+                    _eof = true;
+                }
+            }
+        } catch (CharacterCodingException excp) {
+            throw error("could not decode input");
+        } catch (IOException excp) {
+            throw error("could not read input");
+        }
+        boolean more = out.position() > _limit;
+        _limit = out.position();
+        return more;
+    }
+
+    /** Default initial size of the character and byte buffers. */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** Smallest byte buffer, which must hold any encoded character. */
+    private static final int MIN_BYTES = 16;
+
+    /** Source of input. */
+    private final ReadableByteChannel _source;
+
+    /** Decodes _bytes into _buf. */
+    private final CharsetDecoder _decoder;
+
+    /** Bytes read but not yet decoded, ready for reading. */
+    private ByteBuffer _bytes;
+
+    /** True once _source is exhausted (or was mapped whole). */
+    private boolean _inputDone;
+
+    /** True once all input has been decoded. */
+    private boolean _eof;
+
+    /** Decoded characters. */
+    private char[] _buf;
+
+    /** Index in _buf of the first unread character. */
+    private int _pos;
+
+    /** Index in _buf just past the last decoded character. */
+    private int _limit;
+
+    /** Bounds of the current line in _buf; _start is -1 before the first
+     *  call to next. */
+    private int _start = -1, _end;
+
+}
@@ -0,0 +1,154 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+import static org.junit.Assume.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Scanner;
+
+/** The suite of all JUnit tests for the LineReader class.
+ *  @author Edan Bash
+ */
+public class LineReaderTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /** Inputs on which LineReader must agree with Scanner. */
+    private static final String[] INPUTS = {
+        "", "\n", "\n\n", "A", "A\n", "A\n\n", "\nA", "\n\nA", "A\n\nB\n",
+        "* B I\nHELLO\n", "*\n*X\n* \nx*\n", "*A\rB\nC", "* A\u2028B\n",
+        "A\r\nB\r\n", "\n* B I II III AAA (AB)\nHELLO WORLD\n\n",
+    };
+
+    /** Return the lines of TEXT, each prefixed by "S:" if it is a
+     *  settings line and "M:" if not, as a Scanner using the delimiter
+     *  "\n" splits and classifies them. */
+    private List<String> scanned(String text) {
+        Scanner input = new Scanner(text);
+        input.useDelimiter("\\n");
+        ArrayList<String> result = new ArrayList<>();
+        while (input.hasNext()) {
+            String kind = input.hasNext("\\*.+") ? "S:" : "M:";
+            result.add(kind + input.next());
+        }
+        return result;
+    }
+
+    /** Return the lines read by READER, marked as by scanned. */
+    private List<String> read(LineReader reader) {
+        ArrayList<String> result = new ArrayList<>();
+        while (reader.next()) {
+            String line = new String(reader.buffer(), reader.start(),
+                                     reader.end() - reader.start());
+            assertEquals(line, reader.line());
+            result.add((reader.isSettings() ? "S:" : "M:") + line);
+        }
+        assertFalse(reader.next());
+        return result;
+    }
+
+    /** Return a LineReader reading TEXT from a channel that is not a
+     *  FileChannel. */
+    private LineReader streamed(String text) {
+        return new LineReader(Channels.newChannel(new ByteArrayInputStream(
+            text.getBytes(StandardCharsets.UTF_8))), StandardCharsets.UTF_8);
+    }
+
+    /** Return a FileChannel reading a temporary file containing TEXT. */
+    private FileChannel file(String text) throws IOException {
+        File file = File.createTempFile("lines", ".in");
+        file.deleteOnExit();
+        Files.write(file.toPath(), text.getBytes(StandardCharsets.UTF_8));
+        return FileChannel.open(file.toPath());
+    }
+
+    @Test
+    public void testMatchesScannerStreamed() {
+        for (String text : INPUTS) {
+            assertEquals(text, scanned(text), read(streamed(text)));
+        }
+    }
+
+    @Test
+    public void testMatchesScannerMapped() throws IOException {
+        for (String text : INPUTS) {
+            try (FileChannel channel = file(text)) {
+                assertEquals(text, scanned(text),
+                             read(new LineReader(channel,
+                                                 StandardCharsets.UTF_8)));
+            }
+        }
+    }
+
+    @Test
+    public void testSmallBuffers() {
+        for (String text : INPUTS) {
+            for (int size : new int[] { 1, 3, 16 }) {
+                LineReader reader = new LineReader(Channels.newChannel(
+                    new ByteArrayInputStream(
+                        text.getBytes(StandardCharsets.UTF_8))),
+                    StandardCharsets.UTF_8, size);
+                assertEquals(text, scanned(text), read(reader));
+            }
+        }
+    }
+
+    @Test
+    public void testLongLines() {
+        char[] chars = new char[200000];
+        Arrays.fill(chars, 'Q');
+        String longLine = new String(chars);
+        String text = "* B\n" + longLine + "\nA\n" + longLine;
+        List<String> lines = read(streamed(text));
+        assertEquals(scanned(text), lines);
+        assertEquals(4, lines.size());
+    }
+
+    @Test
+    public void testPipe() throws IOException, InterruptedException {
+        File fifo = new File(Files.createTempDirectory("lines").toFile(),
+                             "fifo");
+        fifo.getParentFile().deleteOnExit();
+        fifo.deleteOnExit();
+        Process mkfifo;
+        try {
+            mkfifo = new ProcessBuilder("mkfifo", fifo.getPath()).start();
+        } catch (IOException excp) {
+            mkfifo = null;
+        }
+        assumeTrue(mkfifo != null && mkfifo.waitFor() == 0);
+        String text = "* B I\nHELLO\nWORLD\n";
+        Thread writer = new Thread(() -> {
+            try (OutputStream out = new java.io.FileOutputStream(fifo)) {
+                out.write(text.getBytes(StandardCharsets.UTF_8));
+            } catch (IOException excp) {
+                throw new RuntimeException(excp);
+            }
+        });
+        writer.start();
+        try (FileInputStream in = new FileInputStream(fifo)) {
+            assertEquals(0, in.getChannel().size());
+            assertEquals(scanned(text),
+                         read(new LineReader(in.getChannel(),
+                                             StandardCharsets.UTF_8)));
+        }
+        writer.join();
+    }
+
+}
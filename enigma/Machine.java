@@ -1,7 +1,10 @@
 package enigma;
 
+import java.nio.CharBuffer;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
 
 /** Class that represents a complete enigma machine.
  *  @author Edan Bash
@@ -13,12 +16,54 @@ class Machine {
      *  available rotors. */
     Machine(Alphabet alpha, int numRotors, int pawls,
             Collection<Rotor> allRotors) {
+        this(alpha, numRotors, pawls, new ArrayList<Rotor>(allRotors),
+             null);
+    }
+
+    /** A new Enigma machine as for Machine(ALPHA, NUMROTORS, PAWLS,
+     *  ALLROTORS), with ROTORSBYNAME indexing ALLROTORS by name, or null
+     *  to build the index.  Both are shared, not copied. */
+    private Machine(Alphabet alpha, int numRotors, int pawls,
+                    ArrayList<Rotor> allRotors,
+                    HashMap<String, Rotor> rotorsByName) {
         _alphabet = alpha;
         _numRotors = numRotors;
+        _settingBits = Math.max(1, Integer.SIZE
+            - Integer.numberOfLeadingZeros(alpha.size() - 1));
         _pawls = pawls;
-        _allRotors = new ArrayList<Rotor>();
-        _allRotors.addAll(allRotors);
+        _allRotors = allRotors;
+        if (rotorsByName == null) {
+            rotorsByName = new HashMap<>();
+            for (Rotor r : allRotors) {
+                rotorsByName.putIfAbsent(r.name(), r);
+            }
+        }
+        _rotorsByName = rotorsByName;
         _activeRotors = new Rotor[_numRotors];
+        _split = Math.max(1, _numRotors - Math.min(_pawls, 2));
+        _inner = new int[alpha.size()];
+        _innerSettings = new int[_split];
+    }
+
+    /** Return a new machine with my rotors, settings and plugboard, whose
+     *  rotors move independently of mine.  The copy shares my available
+     *  rotors and their wiring; only the positions of the rotors in its
+     *  slots are its own. */
+    Machine copy() {
+        Machine result = new Machine(_alphabet, _numRotors, _pawls,
+                                     _allRotors, _rotorsByName);
+        for (int i = 0; i < _numRotors; i += 1) {
+            if (_activeRotors[i] != null) {
+                result._activeRotors[i] = _activeRotors[i].copy();
+            }
+        }
+        result._plugboard = _plugboard;
+        return result;
+    }
+
+    /** Return my alphabet. */
+    Alphabet alphabet() {
+        return _alphabet;
     }
 
     /** Return the number of rotor slots I have. */
@@ -31,6 +76,11 @@ class Machine {
         return _pawls;
     }
 
+    /** Return all the rotors available to me. */
+    List<Rotor> allRotors() {
+        return _allRotors;
+    }
+
     /** Return the active rotors in machine. */
     Rotor[] activeRotors() {
         return _activeRotors;
@@ -43,20 +93,26 @@ class Machine {
 
     /** Set my rotor slots to the rotors named ROTORS from my set of
      *  available rotors (ROTORS[0] names the reflector).
-     *  Initially, all rotors are set at their 0 setting. */
+     *  Initially, all rotors are set at their 0 setting.  Each slot
+     *  receives its own copy of the available rotor, sharing its wiring
+     *  but not its position, so that the available rotors are never
+     *  moved, machines with the same available rotors do not interfere,
+     *  and a rotor may fill more than one slot. */
     void insertRotors(String[] rotors) {
         if (rotors.length != _numRotors) {
             throw new enigma.EnigmaException("Invalid number of rotors");
         }
 
-        int activeIndex = 0;
-        for (String name: rotors) {
-            for (int i = 0; i < _allRotors.size(); i += 1) {
-                if (_allRotors.get(i).name().equals(name)) {
-                    _activeRotors[activeIndex] = _allRotors.get(i);
-                    activeIndex += 1;
-                }
+        for (int i = 0; i < _numRotors; i += 1) {
+            Rotor r = _rotorsByName.get(rotors[i]);
+            if (r == null) {
+                throw new enigma.EnigmaException("No rotor named "
+                                                 + rotors[i]);
             }
+            r = r.copy();
+            r.set(0);
+            r.setRing(0);
+            _activeRotors[i] = r;
         }
 
         for (int i = 0; i < _numRotors; i += 1) {
@@ -69,6 +125,73 @@ class Machine {
                 throw new enigma.EnigmaException("Supposed to be moving rotor");
             }
         }
+        _innerValid = false;
+    }
+
+    /** Set my rotors, with their settings and ring settings, and my
+     *  plugboard to those of TEMPLATE, a machine with the same available
+     *  rotors and all its rotors inserted.  If my rotors are already
+     *  copies of the same available rotors as TEMPLATE's and my
+     *  plugboard is TEMPLATE's, only the settings and ring settings of my
+     *  rotors change, at the cost of restore(). */
+    void setUpLike(Machine template) {
+        Rotor[] rotors = template._activeRotors;
+        boolean same = _plugboard == template._plugboard;
+        for (int i = 0; same && i < _numRotors; i += 1) {
+            same = _activeRotors[i] != null
+                && _activeRotors[i].pattern() == rotors[i].pattern();
+        }
+        if (same) {
+            for (int i = 1; i < _numRotors; i += 1) {
+                _activeRotors[i].set(rotors[i].setting());
+                _activeRotors[i].setRing(rotors[i].ringSetting());
+            }
+        } else {
+            for (int i = 0; i < _numRotors; i += 1) {
+                _activeRotors[i] = rotors[i].copy();
+            }
+            _plugboard = template._plugboard;
+            _innerValid = false;
+        }
+    }
+
+    /** Return every arrangement of my available rotors that fits my
+     *  slots: a reflector first, then non-moving rotors, then moving
+     *  rotors in the last numPawls() slots, with no rotor used twice.
+     *  Each arrangement is an array of rotor names, as for
+     *  insertRotors. */
+    List<String[]> rotorOrders() {
+        ArrayList<String[]> result = new ArrayList<>();
+        addRotorOrders(new String[_numRotors],
+                       new boolean[_allRotors.size()], 0, result);
+        return result;
+    }
+
+    /** Add to RESULT each completion of ORDER, whose first SLOT entries
+     *  are filled in using the rotors marked in USED. */
+    private void addRotorOrders(String[] order, boolean[] used, int slot,
+                                List<String[]> result) {
+        if (slot == _numRotors) {
+            result.add(order.clone());
+            return;
+        }
+        for (int i = 0; i < _allRotors.size(); i += 1) {
+            Rotor r = _allRotors.get(i);
+            boolean fits;
+            if (slot == 0) {
+                fits = r.reflecting();
+            } else if (slot < _numRotors - _pawls) {
+                fits = !r.rotates() && !r.reflecting();
+            } else {
+                fits = r.rotates();
+            }
+            if (fits && !used[i]) {
+                used[i] = true;
+                order[slot] = r.name();
+                addRotorOrders(order, used, slot + 1, result);
+                used[i] = false;
+            }
+        }
     }
 
     /** Set my rotors according to SETTING, which must be a string of
@@ -105,40 +228,238 @@ class Machine {
      *  index in the range 0..alphabet size - 1), after first advancing
      *  the machine. */
     int convert(int c) {
-        boolean[] canRotate = new boolean[_numRotors];
-        for (int i = _numRotors - 1; i >= 0; i -= 1) {
-            if (_activeRotors[i].atNotch() && _activeRotors[i - 1].rotates()) {
-                canRotate[i] = true;
-                canRotate[i - 1] = true;
-            }
-        }
-        canRotate[_numRotors - 1] = true;
-        for (int i = 0; i < _numRotors; i += 1) {
-            if (canRotate[i]) {
-                _activeRotors[i].advance();
-            }
+        advanceRotors();
+        return translate(c);
+    }
+
+    /** Returns the result of converting the input character C (as an
+     *  index in the range 0..alphabet size - 1) in the machine's current
+     *  position, without advancing it. */
+    int translate(int c) {
+        if (!innerCurrent()) {
+            buildInner();
         }
 
         int result = _plugboard.convertForward(c);
-        for (int i = _numRotors - 1; i >= 0; i -= 1) {
+        for (int i = _numRotors - 1; i >= _split; i -= 1) {
             result = _activeRotors[i].convertForward(result);
         }
-        for (int i = 1; i < _numRotors; i += 1) {
+        result = _inner[result];
+        for (int i = _split; i < _numRotors; i += 1) {
             result = _activeRotors[i].convertBackward(result);
         }
         result = _plugboard.convertBackward(result);
         return result;
     }
 
+    /** Returns true iff _inner describes the rotors currently in the
+     *  first _split slots in their current settings. */
+    private boolean innerCurrent() {
+        if (!_innerValid) {
+            return false;
+        }
+        for (int i = 1; i < _split; i += 1) {
+            if (_activeRotors[i].setting() != _innerSettings[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Composes the rotors in the first _split slots, forward through
+     *  the reflector and back, into _inner, and records their settings
+     *  in _innerSettings. */
+    private void buildInner() {
+        for (int x = 0; x < _inner.length; x += 1) {
+            int result = x;
+            for (int i = _split - 1; i >= 0; i -= 1) {
+                result = _activeRotors[i].convertForward(result);
+            }
+            for (int i = 1; i < _split; i += 1) {
+                result = _activeRotors[i].convertBackward(result);
+            }
+            _inner[x] = result;
+        }
+        for (int i = 1; i < _split; i += 1) {
+            _innerSettings[i] = _activeRotors[i].setting();
+        }
+        _innerValid = true;
+    }
+
+    /** Return the number of bits needed to pack the settings and ring
+     *  settings of my rotors, as snapshot() does; snapshot() requires
+     *  that this be at most 64. */
+    int stateBits() {
+        return 2 * (_numRotors - 1) * _settingBits;
+    }
+
+    /** Return the settings and ring settings of my rotors, packed into a
+     *  long: for each slot after the reflector's, from the first, the
+     *  setting and then the ring setting, each in the fewest bits that
+     *  can hold an index in my alphabet, from the least significant bit
+     *  up.  My rotors and plugboard are not included: restore(long) on a
+     *  machine with the same rotors inserted returns it to my state. */
+    long snapshot() {
+        int bits = _settingBits;
+        if (stateBits() > Long.SIZE) {
+            throw EnigmaException.error("machine state does not fit in a "
+                                        + "long");
+        }
+        long result = 0;
+        for (int i = _numRotors - 1; i >= 1; i -= 1) {
+            result = result << bits | _activeRotors[i].ringSetting();
+            result = result << bits | _activeRotors[i].setting();
+        }
+        return result;
+    }
+
+    /** Set the settings and ring settings of my rotors to STATE, as
+     *  returned by snapshot(). */
+    void restore(long state) {
+        int bits = _settingBits;
+        long mask = (1L << bits) - 1;
+        for (int i = 1; i < _numRotors; i += 1) {
+            _activeRotors[i].set((int) (state & mask));
+            state >>>= bits;
+            _activeRotors[i].setRing((int) (state & mask));
+            state >>>= bits;
+        }
+    }
+
+    /** Store the settings and ring settings of my rotors in the
+     *  numRotors() - 1 elements of STATE starting at OFF, one per slot
+     *  after the reflector's, each as the setting plus 2**16 times the
+     *  ring setting.  This form holds the state of a machine with any
+     *  alphabet. */
+    void snapshot(int[] state, int off) {
+        for (int i = 1; i < _numRotors; i += 1) {
+            state[off + i - 1] = _activeRotors[i].ringSetting() << 16
+                | _activeRotors[i].setting();
+        }
+    }
+
+    /** Set the settings and ring settings of my rotors to those stored in
+     *  STATE starting at OFF by snapshot(int[], int). */
+    void restore(int[] state, int off) {
+        for (int i = 1; i < _numRotors; i += 1) {
+            int s = state[off + i - 1];
+            _activeRotors[i].set(s & 0xffff);
+            _activeRotors[i].setRing(s >>> 16);
+        }
+    }
+
+    /** Advances my rotors to where N further keypresses would leave
+     *  them, in time independent of N.  N must not be negative. */
+    void seek(long n) {
+        if (n < 0) {
+            throw new enigma.EnigmaException("Negative seek: " + n);
+        }
+        if (_stepping == null || !_stepping.matches(_activeRotors)) {
+            _stepping = new Stepping(_activeRotors, _pawls);
+        }
+        _stepping.advance(this, n);
+    }
+
+    /** Advances the rotors for one keypress.  The rightmost rotor always
+     *  advances; any other rotor advances when the rotor to its right is
+     *  at a notch, or when it is itself at a notch and the rotor to its
+     *  left can move (the double step).  Notches are tested before any
+     *  rotor moves. */
+    void advanceRotors() {
+        Rotor[] rotors = _activeRotors;
+        int last = _numRotors - 1;
+        boolean atNotch = rotors[1].atNotch();
+        for (int i = 1; i <= last; i += 1) {
+            boolean rightAtNotch = i < last && rotors[i + 1].atNotch();
+            if (i == last
+                    || (rightAtNotch && rotors[i].rotates())
+                    || (atNotch && rotors[i - 1].rotates())) {
+                rotors[i].advance();
+            }
+            atNotch = rightAtNotch;
+        }
+    }
+
     /** Returns the encoding/decoding of MSG, updating the state of
      *  the rotors accordingly. */
     String convert(String msg) {
-        msg = msg.replaceAll(" ", "");
-        String result = new String();
-        for (int i = 0; i < msg.length(); i += 1) {
-            result += _alphabet.toChar(convert(_alphabet.toInt(msg.charAt(i))));
+        char[] src = msg.toCharArray();
+        char[] dst = new char[src.length];
+        int n = convert(src, 0, src.length, dst, 0);
+        return new String(dst, 0, n);
+    }
+
+    /** Converts the LEN characters of SRC starting at OFF into DST,
+     *  starting at DST[0], skipping whitespace and updating the state of
+     *  the rotors accordingly.  Returns the number of characters
+     *  written. */
+    int convert(char[] src, int off, int len, char[] dst) {
+        return convert(src, off, len, dst, 0);
+    }
+
+    /** Converts the LEN characters of SRC starting at OFF into DST,
+     *  starting at DSTOFF, skipping whitespace and updating the state of
+     *  the rotors accordingly.  SRC and DST may be the same array with
+     *  DSTOFF <= OFF.  Returns the number of characters written. */
+    int convert(char[] src, int off, int len, char[] dst, int dstOff) {
+        int j = dstOff;
+        for (int i = off, end = off + len; i < end; i += 1) {
+            char c = src[i];
+            int index = _alphabet.toInt(c);
+            if (index < 0) {
+                if (Character.isWhitespace(c)) {
+                    continue;
+                }
+                throw new enigma.EnigmaException(c + " not in alphabet");
+            }
+            dst[j] = _alphabet.toChar(convert(index));
+            j += 1;
+        }
+        return j - dstOff;
+    }
+
+    /** Converts the characters remaining in SRC into DST, skipping
+     *  whitespace, until SRC is exhausted or DST is full.  Returns the
+     *  number of characters written. */
+    int convert(CharBuffer src, CharBuffer dst) {
+        if (src.hasArray() && dst.hasArray()) {
+            int len = Math.min(src.remaining(), dst.remaining());
+            int n = 0;
+            while (len > 0) {
+                int read = len;
+                int written = convert(src.array(),
+                        src.arrayOffset() + src.position(), read,
+                        dst.array(), dst.arrayOffset() + dst.position());
+                src.position(src.position() + read);
+                dst.position(dst.position() + written);
+                n += written;
+                len = Math.min(src.remaining(), dst.remaining());
+            }
+            return n;
+        }
+        int n = 0;
+        while (src.hasRemaining() && dst.hasRemaining()) {
+            char c = src.get();
+            int index = _alphabet.toInt(c);
+            if (index < 0) {
+                if (Character.isWhitespace(c)) {
+                    continue;
+                }
+                throw new enigma.EnigmaException(c + " not in alphabet");
+            }
+            dst.put(_alphabet.toChar(convert(index)));
+            n += 1;
+        }
+        return n;
+    }
+
+    /** Converts the LEN alphabet indices in SRC starting at OFF into DST,
+     *  starting at DSTOFF, updating the state of the rotors accordingly.
+     *  SRC and DST may be the same array. */
+    void convert(int[] src, int off, int len, int[] dst, int dstOff) {
+        for (int i = 0; i < len; i += 1) {
+            dst[dstOff + i] = convert(src[off + i]);
         }
-        return result;
     }
 
     /** Common alphabet of my rotors. */
@@ -147,16 +468,47 @@ class Machine {
     /** Number of rotors in machine. */
     private final int _numRotors;
 
+    /** Number of bits in a packed setting: the fewest that hold any
+     *  index in _alphabet. */
+    private final int _settingBits;
+
     /** Number of pawls in machine. */
     private final int _pawls;
 
     /** List of all active rotors in machine. */
-    private Rotor[] _activeRotors;
+    private final Rotor[] _activeRotors;
 
     /** List of all available rotors. */
-    private ArrayList<Rotor> _allRotors;
+    private final ArrayList<Rotor> _allRotors;
+
+    /** The available rotors, by name.  Where names repeat, the first
+     *  rotor of the name. */
+    private final HashMap<String, Rotor> _rotorsByName;
 
     /** Stores plugboard setting of the machine. */
     private Rotor _plugboard;
 
+    /** Number of leftmost slots (the reflector, the fixed rotors and all
+     *  but the two rightmost moving rotors) whose combined effect is
+     *  cached in _inner.  These move rarely, so each keypress need only
+     *  walk the remaining rotors. */
+    private final int _split;
+
+    /** The "virtual reflector": maps a value entering slot _split - 1
+     *  from the right to the value leaving it after passing through the
+     *  reflector and back. */
+    private final int[] _inner;
+
+    /** Settings of the rotors in slots 1 .. _split - 1 when _inner was
+     *  built. */
+    private final int[] _innerSettings;
+
+    /** False if the rotors in my slots have changed since _inner was
+     *  built. */
+    private boolean _innerValid;
+
+    /** Calculates the effect of many keypresses for seek, or null if not
+     *  yet needed. */
+    private Stepping _stepping;
+
 }
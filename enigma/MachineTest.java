@@ -2,9 +2,13 @@ package enigma;
 
 import org.junit.Test;
 
+import java.lang.management.ManagementFactory;
+import java.nio.CharBuffer;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.concurrent.ForkJoinPool;
 import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
 
 public class MachineTest {
 
@@ -95,4 +99,366 @@ public class MachineTest {
                 + "ALL THESE PROJECTS"));
 
     }
+
+    @Test
+    public void testConvertCharArray() {
+        testRotors = new String[]{"B", "Beta", "I", "II", "III"};
+        intializeMachine(alpha, 5, 3, testRotors);
+        m.setPlugboard(new Permutation("(TD)(KC)(JZ)", alpha));
+        char[] src = "..I WAS\tSCARED OF CODING\nIN JAVA..".toCharArray();
+        char[] dst = new char[src.length];
+        int n = m.convert(src, 2, src.length - 4, dst);
+        assertEquals("HGJNBOKDWALBFKUCMUTJZUIO", new String(dst, 0, n));
+    }
+
+    @Test
+    public void testConvertCharBuffer() {
+        testRotors = new String[]{"B", "Beta", "I", "II", "III"};
+        intializeMachine(alpha, 5, 3, testRotors);
+        m.setPlugboard(new Permutation("(TD)(KC)(JZ)", alpha));
+        CharBuffer src = CharBuffer.wrap("I WAS SCARED OF CODING IN JAVA");
+        CharBuffer dst = CharBuffer.allocate(10);
+        StringBuilder result = new StringBuilder();
+        while (src.hasRemaining()) {
+            m.convert(src, dst);
+            dst.flip();
+            result.append(dst);
+            dst.clear();
+        }
+        assertEquals("HGJNBOKDWALBFKUCMUTJZUIO", result.toString());
+    }
+
+    @Test
+    public void testConvertIndices() {
+        testRotors = new String[]{"B", "Beta", "I", "II", "III"};
+        intializeMachine(alpha, 5, 3, testRotors);
+        m.setPlugboard(new Permutation("(TD)(KC)(JZ)", alpha));
+        String msg = "IWASSCAREDOFCODINGINJAVA";
+        int[] text = new int[msg.length()];
+        for (int i = 0; i < text.length; i += 1) {
+            text[i] = alpha.toInt(msg.charAt(i));
+        }
+        m.convert(text, 0, text.length, text, 0);
+        StringBuilder result = new StringBuilder();
+        for (int c : text) {
+            result.append(alpha.toChar(c));
+        }
+        assertEquals("HGJNBOKDWALBFKUCMUTJZUIO", result.toString());
+    }
+
+    @Test (expected = enigma.EnigmaException.class)
+    public void testConvertNotInAlphabet() {
+        intializeMachine(alpha, 3, 1, testRotors);
+        m.setRotors("AA");
+        m.setPlugboard(new Permutation("", alpha));
+        m.convert("ABC?");
+    }
+
+    @Test
+    public void testDoubleStep() {
+        testRotors = new String[]{"B", "Beta", "III", "II", "I"};
+        intializeMachine(alpha, 5, 3, testRotors);
+        m.setRotors("AADO");
+        m.setPlugboard(new Permutation("", alpha));
+        String[] expected = {"AADP", "AADQ", "AAER", "ABFS", "ABFT"};
+        for (String settings : expected) {
+            m.convert(0);
+            for (int i = 1; i < 5; i += 1) {
+                assertEquals(settings.charAt(i - 1),
+                        alpha.toChar(m.activeRotors()[i].setting()));
+            }
+        }
+    }
+
+    @Test
+    public void testSetSlowRotorBetweenMessages() {
+        testRotors = new String[]{"B", "Beta", "I", "II", "III"};
+        intializeMachine(alpha, 5, 3, testRotors);
+        m.setPlugboard(new Permutation("(TD)(KC)(JZ)", alpha));
+        m.convert("I WAS SCARED OF USING GIT");
+        m.setRotors("AAAA");
+        m.activeRotors()[1].set(0);
+        assertEquals("HGJNBOKDWALBFKUCMUTJZUIO", m.convert("I WAS SCARED OF "
+                + "CODING IN JAVA"));
+        m.activeRotors()[2].set('B');
+        m.activeRotors()[3].set('C');
+        m.activeRotors()[4].set('D');
+        String fromDirectSet = m.convert("THE SLOW ROTORS WERE SET DIRECTLY");
+        m.setRotors("ABCD");
+        assertEquals(m.convert("THE SLOW ROTORS WERE SET DIRECTLY"),
+                     fromDirectSet);
+    }
+
+    @Test
+    public void testSeek() {
+        testRotors = new String[]{"B", "Beta", "VI", "II", "VII"};
+        intializeMachine(alpha, 5, 3, testRotors);
+        for (int n : new int[] {0, 1, 25, 26, 677, 17000, 40000}) {
+            for (String setting : new String[] {"AAAA", "QEZL", "XDYM"}) {
+                m.setRotors(setting);
+                m.activeRotors()[3].setRing(4);
+                m.activeRotors()[4].setRing(13);
+                for (int i = 0; i < n; i += 1) {
+                    m.advanceRotors();
+                }
+                int[] expected = new int[5];
+                for (int i = 0; i < 5; i += 1) {
+                    expected[i] = m.activeRotors()[i].setting();
+                }
+                m.setRotors(setting);
+                m.activeRotors()[3].setRing(4);
+                m.activeRotors()[4].setRing(13);
+                m.seek(n);
+                for (int i = 0; i < 5; i += 1) {
+                    assertEquals(setting + " + " + n + ", rotor " + i,
+                                 expected[i], m.activeRotors()[i].setting());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testSeekFar() {
+        testRotors = new String[]{"B", "Beta", "I", "VIII", "III"};
+        intializeMachine(alpha, 5, 3, testRotors);
+        m.setRotors("ADUV");
+        m.seek(1000000000000L);
+        m.seek(23456);
+        int[] expected = new int[5];
+        for (int i = 0; i < 5; i += 1) {
+            expected[i] = m.activeRotors()[i].setting();
+        }
+        m.setRotors("ADUV");
+        m.seek(1000000023456L);
+        for (int i = 0; i < 5; i += 1) {
+            assertEquals(expected[i], m.activeRotors()[i].setting());
+        }
+    }
+
+    @Test
+    public void testSeekNegative() {
+        String[][] layouts = {
+            {"B", "Beta", "I", "II", "III"},
+            {"B", "Beta", "VI", "VII", "VIII"},
+        };
+        for (String[] layout : layouts) {
+            testRotors = layout;
+            intializeMachine(alpha, 5, 3, testRotors);
+            m.setRotors("AXLE");
+            try {
+                m.seek(-5);
+                fail("seek(-5) accepted");
+            } catch (EnigmaException excp) {
+                for (int i = 1; i < 5; i += 1) {
+                    assertEquals("AXLE".charAt(i - 1) - 'A',
+                                 m.activeRotors()[i].setting());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testParallelConvert() {
+        testRotors = new String[]{"B", "Beta", "VI", "II", "VII"};
+        intializeMachine(alpha, 5, 3, testRotors);
+        m.setRotors("QEZL");
+        m.setPlugboard(new Permutation("(AQ)(WS)(ED)", alpha));
+        StringBuilder msg = new StringBuilder();
+        java.util.Random random = new java.util.Random(61);
+        for (int i = 0; i < 200000; i += 1) {
+            msg.append(random.nextInt(6) == 0 ? ' '
+                       : alpha.toChar(random.nextInt(26)));
+        }
+        char[] src = msg.toString().toCharArray();
+        Machine sequential = m.copy();
+        char[] expected = new char[src.length];
+        int n = sequential.convert(src, 0, src.length, expected, 0);
+        char[] dst = new char[src.length];
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            ParallelConverter converter = new ParallelConverter(pool, 997);
+            assertEquals(n, converter.convert(m, src, 0, src.length, dst,
+                                              0));
+        } finally {
+            pool.shutdown();
+        }
+        assertEquals(new String(expected, 0, n), new String(dst, 0, n));
+        for (int i = 0; i < 5; i += 1) {
+            assertEquals(sequential.activeRotors()[i].setting(),
+                         m.activeRotors()[i].setting());
+        }
+    }
+
+    @Test
+    public void testMachinesShareCatalog() {
+        testRotors = new String[]{"B", "Beta", "III", "IV", "I"};
+        intializeMachine(alpha, 5, 3, testRotors);
+        Machine other = new Machine(alpha, 5, 3, allRotors);
+        other.insertRotors(testRotors);
+        m.setRotors("AXLE");
+        m.setPlugboard(new Permutation("(AB)", alpha));
+        other.setRotors("AXLE");
+        other.setPlugboard(new Permutation("(AB)", alpha));
+        String msg = "HELLO WORLD HELLO WORLD HELLO WORLD";
+        StringBuilder first = new StringBuilder();
+        StringBuilder second = new StringBuilder();
+        for (int i = 0; i < msg.length(); i += 1) {
+            first.append(m.convert(msg.substring(i, i + 1)));
+            second.append(other.convert(msg.substring(i, i + 1)));
+        }
+        assertEquals(first.toString(), second.toString());
+        m.setRotors("AXLE");
+        assertEquals(first.toString(), m.convert(msg));
+        for (Rotor r : allRotors) {
+            assertEquals(r.name(), 0, r.setting());
+        }
+    }
+
+    @Test
+    public void testRotorInTwoSlots() {
+        testRotors = new String[]{"B", "Beta", "I", "I", "I"};
+        intializeMachine(alpha, 5, 3, testRotors);
+        m.setRotors("AQQQ");
+        m.setPlugboard(new Permutation("", alpha));
+        ArrayList<Rotor> distinct = new ArrayList<>();
+        distinct.add(_B);
+        distinct.add(_Beta);
+        for (String name : new String[]{"I1", "I2", "I3"}) {
+            distinct.add(new MovingRotor(name, _I.permutation(), "Q"));
+        }
+        Machine expected = new Machine(alpha, 5, 3, distinct);
+        expected.insertRotors(new String[]{"B", "Beta", "I1", "I2", "I3"});
+        expected.setRotors("AQQQ");
+        expected.setPlugboard(new Permutation("", alpha));
+        String msg = "THE SAME ROTOR IN THREE SLOTS STEPS THREE TIMES";
+        assertEquals(expected.convert(msg), m.convert(msg));
+    }
+
+    @Test
+    public void testConcurrentMachines() throws InterruptedException {
+        testRotors = new String[]{"B", "Beta", "VI", "II", "VII"};
+        intializeMachine(alpha, 5, 3, testRotors);
+        Machine catalog = new Machine(alpha, 5, 3, allRotors);
+        String[] settings = {"AAAA", "QEZL", "XDYM", "ZZZZ"};
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 20000; i += 1) {
+            text.append(alpha.toChar((i * 7 + i / 26) % 26));
+        }
+        String msg = text.toString();
+        m.setPlugboard(new Permutation("", alpha));
+        String[] expected = new String[settings.length];
+        for (int k = 0; k < settings.length; k += 1) {
+            m.setRotors(settings[k]);
+            expected[k] = m.convert(msg);
+        }
+        String[] results = new String[settings.length];
+        Thread[] threads = new Thread[settings.length];
+        for (int k = 0; k < settings.length; k += 1) {
+            final int t = k;
+            threads[k] = new Thread(() -> {
+                Machine mine = catalog.copy();
+                mine.insertRotors(testRotors);
+                mine.setPlugboard(new Permutation("", alpha));
+                mine.setRotors(settings[t]);
+                results[t] = mine.convert(msg);
+            });
+            threads[k].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertArrayEquals(expected, results);
+    }
+
+    @Test
+    public void testConvertDoesNotAllocate() {
+        com.sun.management.ThreadMXBean bean =
+            (com.sun.management.ThreadMXBean)
+            ManagementFactory.getThreadMXBean();
+        assumeTrue(bean.isThreadAllocatedMemorySupported()
+                   && bean.isThreadAllocatedMemoryEnabled());
+        testRotors = new String[]{"B", "Beta", "VI", "VII", "VIII"};
+        intializeMachine(alpha, 5, 3, testRotors);
+        m.setRotors("AZYX");
+        m.setPlugboard(new Permutation("(AB)(CD)", alpha));
+        long id = Thread.currentThread().getId();
+        for (int i = 0; i < 10; i += 1) {
+            convertMany(100000);
+        }
+        long overhead = bean.getThreadAllocatedBytes(id);
+        overhead = bean.getThreadAllocatedBytes(id) - overhead;
+        long before = bean.getThreadAllocatedBytes(id);
+        int sum = convertMany(100000);
+        long allocated = bean.getThreadAllocatedBytes(id) - before;
+        assertTrue(sum > 0);
+        assertTrue("convert(int) allocated " + allocated + " bytes",
+                   allocated <= overhead);
+    }
+
+    @Test
+    public void testSnapshotRestore() {
+        testRotors = new String[]{"B", "Beta", "VI", "II", "VII"};
+        intializeMachine(alpha, 5, 3, testRotors);
+        m.setRotors("QEZL");
+        m.activeRotors()[3].setRing(4);
+        m.activeRotors()[4].setRing(25);
+        m.setPlugboard(new Permutation("(AQ)(WS)(ED)", alpha));
+        assertEquals(40, m.stateBits());
+        long packed = m.snapshot();
+        int[] state = new int[6];
+        m.snapshot(state, 2);
+        String msg = "FROM HIS SHOULDER HIAWATHA TOOK THE CAMERA OF ROSEWOOD";
+        String expected = m.convert(msg);
+        m.setRotors("AAAA");
+        m.restore(packed);
+        assertEquals(expected, m.convert(msg));
+        assertEquals(4, m.activeRotors()[3].ringSetting());
+        m.setRotors("AAAA");
+        m.restore(state, 2);
+        assertEquals(expected, m.convert(msg));
+        assertEquals(25, m.activeRotors()[4].ringSetting());
+        Machine other = m.copy();
+        other.restore(packed);
+        assertEquals(packed, other.snapshot());
+        assertEquals(expected, other.convert(msg));
+    }
+
+    @Test (expected = enigma.EnigmaException.class)
+    public void testSnapshotTooLarge() {
+        StringBuilder chars = new StringBuilder();
+        StringBuilder pairs = new StringBuilder();
+        for (char c = 'a'; c < 'a' + 1000; c += 2) {
+            chars.append(c).append((char) (c + 1));
+            pairs.append('(').append(c).append((char) (c + 1)).append(')');
+        }
+        Alphabet big = new Alphabet(chars.toString());
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        rotors.add(new Reflector("R", new Permutation(pairs.toString(),
+                                                      big)));
+        for (int i = 0; i < 4; i += 1) {
+            rotors.add(new MovingRotor("M" + i, new Permutation("", big),
+                                       "a"));
+        }
+        m = new Machine(big, 5, 4, rotors);
+        m.insertRotors(new String[]{"R", "M0", "M1", "M2", "M3"});
+        assertEquals(80, m.stateBits());
+        m.activeRotors()[2].set(999);
+        m.activeRotors()[2].setRing(998);
+        int[] state = new int[4];
+        m.snapshot(state, 0);
+        m.setRotors("aaaa");
+        m.restore(state, 0);
+        assertEquals(999, m.activeRotors()[2].setting());
+        assertEquals(998, m.activeRotors()[2].ringSetting());
+        m.snapshot();
+    }
+
+    /** Convert N characters with m, returning the sum of the results. */
+    private int convertMany(int n) {
+        int sum = 0;
+        for (int i = 0; i < n; i += 1) {
+            sum += m.convert(i % 26);
+        }
+        return sum;
+    }
 }
@@ -1,13 +1,29 @@
 package enigma;
 
 import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.PrintStream;
+import java.io.PrintWriter;
 
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.NoSuchElementException;
 import java.util.Scanner;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static enigma.EnigmaException.*;
 
@@ -24,9 +40,57 @@ public final class Main {
      *  input.  ARGS[2] is optional; when present, it names an output
      *  file for processed messages.  Otherwise, output goes to the
      *  standard output. Exits normally if there are no errors in the input;
-     *  otherwise with code 1. */
+     *  otherwise with code 1.  The configuration file may instead be an
+     *  image written by "compile-config".  If ARGS[0] is "serve", runs an
+     *  encryption server instead, as described in Server.serve, with
+     *  the remaining ARGS.  If ARGS[0] is "compile-config", checks the
+     *  configuration file ARGS[1] and writes it as an image to the file
+     *  ARGS[2].  If ARGS[0] is "bombe", searches for the settings of a
+     *  message from a crib, as described in Bombe.run.  If ARGS[0] is
+     *  "ioc-search", searches for the rotors of a message from its
+     *  ciphertext alone, as described in CoincidenceSearch.run.  If
+     *  ARGS[0] is "plugboard", searches for the plugboard of a message
+     *  whose rotors are known, as described in PlugboardSolver.run.  If
+     *  ARGS[0] is "compile-ngrams", compiles an n-gram model for
+     *  scoring, as described in NGrams.compile.  If ARGS[0] is "batch",
+     *  processes many input files with one configuration, as described
+     *  in FileBatch.run. */
     public static void main(String... args) {
         try {
+            if (args.length > 0 && args[0].equals("serve")) {
+                Server.serve(Arrays.copyOfRange(args, 1, args.length));
+                return;
+            }
+            if (args.length > 0 && args[0].equals("bombe")) {
+                Bombe.run(Arrays.copyOfRange(args, 1, args.length));
+                return;
+            }
+            if (args.length > 0 && args[0].equals("ioc-search")) {
+                CoincidenceSearch.run(Arrays.copyOfRange(args, 1,
+                                                         args.length));
+                return;
+            }
+            if (args.length > 0 && args[0].equals("plugboard")) {
+                PlugboardSolver.run(Arrays.copyOfRange(args, 1,
+                                                       args.length));
+                return;
+            }
+            if (args.length > 0 && args[0].equals("compile-ngrams")) {
+                NGrams.compile(Arrays.copyOfRange(args, 1, args.length));
+                return;
+            }
+            if (args.length > 0 && args[0].equals("batch")) {
+                FileBatch.run(Arrays.copyOfRange(args, 1, args.length));
+                return;
+            }
+            if (args.length > 0 && args[0].equals("compile-config")) {
+                if (args.length != 3) {
+                    throw error("usage: compile-config CONFIG IMAGE");
+                }
+                ConfigImage.write(new Main(args[1]).readConfig(),
+                                  Paths.get(args[2]));
+                return;
+            }
             new Main(args).process();
             return;
         } catch (EnigmaException excp) {
@@ -35,13 +99,60 @@ public final class Main {
         System.exit(1);
     }
 
-    /** Check ARGS and open the necessary files (see comment on main). */
+    /** Check ARGS and open the necessary files (see comment on main).
+     *  ARGS may begin with options:
+     *    --nio   read input through a channel (memory-mapping files) and
+     *            write output through a large buffer, rather than using
+     *            Scanner and PrintStream.
+     *    --parallel[=N]
+     *            convert the messages following each settings line
+     *            concurrently on N threads (by default, one per
+     *            processor), writing the results in their original
+     *            order.
+     *    --pipeline
+     *            read, convert and write on three threads at once,
+     *            reading and writing as --nio does (see Pipeline);
+     *            not allowed with --parallel.
+     *    --metrics
+     *            count and time the phases of processing, publish the
+     *            counts as the MBean enigma:type=Metrics, and print
+     *            them on the standard error on exit (see Metrics). */
     Main(String[] args) {
+        _setups = new SetupCache(SETUP_CACHE_BYTES);
+        int first = 0;
+        while (first < args.length && args[first].startsWith("--")) {
+            option(args[first]);
+            first += 1;
+        }
+        args = Arrays.copyOfRange(args, first, args.length);
+        if (_pipeline && _threads > 0) {
+            throw error("--pipeline and --parallel are exclusive");
+        }
         if (args.length < 1 || args.length > 3) {
             throw error("Only 1, 2, or 3 command-line arguments allowed");
         }
 
-        _config = getInput(args[0]);
+        openConfig(args[0]);
+
+        if (_nio) {
+            if (args.length > 1) {
+                _lines = new LineReader(getChannel(args[1]),
+                                        Charset.defaultCharset());
+            } else {
+                _lines = new LineReader(
+                    new FileInputStream(FileDescriptor.in).getChannel(),
+                    Charset.defaultCharset());
+            }
+            if (args.length > 2) {
+                _writer = new GroupWriter(getOutputChannel(args[2]),
+                                          Charset.defaultCharset());
+            } else {
+                _writer = new GroupWriter(
+                    new FileOutputStream(FileDescriptor.out).getChannel(),
+                    Charset.defaultCharset());
+            }
+            return;
+        }
 
         if (args.length > 1) {
             _input = getInput(args[1]);
@@ -56,6 +167,81 @@ public final class Main {
         }
     }
 
+    /** A reader of the configuration file (or image) named CONFIG, for
+     *  use by readConfig and setUp alone. */
+    Main(String config) {
+        _setups = new SetupCache(SETUP_CACHE_BYTES);
+        openConfig(config);
+    }
+
+    /** A processor of the messages in LINES, sending the results to
+     *  WRITER, as processLines does, with the configuration that CONFIG
+     *  has read, and sharing CONFIG's cache of configured machines. */
+    Main(Main config, LineReader lines, GroupWriter writer) {
+        _alphabet = config._alphabet;
+        _setups = config._setups;
+        _nio = true;
+        _lines = lines;
+        _writer = writer;
+    }
+
+    /** Return an executor that runs each task on a new virtual thread if
+     *  this runtime provides them, and otherwise on a pooled platform
+     *  thread. */
+    static ExecutorService threadPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class
+                .getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException excp) {
+            return Executors.newCachedThreadPool();
+        }
+    }
+
+    /** Record the command-line option OPTION. */
+    private void option(String option) {
+        switch (option) {
+        case "--nio":
+            _nio = true;
+            break;
+        case "--parallel":
+            _threads = Runtime.getRuntime().availableProcessors();
+            break;
+        case "--pipeline":
+            _pipeline = true;
+            _nio = true;
+            break;
+        case "--metrics":
+            _metrics = new Metrics();
+            break;
+        default:
+            if (option.startsWith("--parallel=")) {
+                try {
+                    _threads = Integer.parseInt(option.substring(11));
+                } catch (NumberFormatException excp) {
+                    _threads = 0;
+                }
+                if (_threads <= 0) {
+                    throw error("bad thread count in %s", option);
+                }
+                break;
+            }
+            throw error("unknown option %s", option);
+        }
+    }
+
+    /** Prepare to read the configuration file or image named NAME. */
+    private void openConfig(String name) {
+        try {
+            if (ConfigImage.isImage(Paths.get(name))) {
+                _image = Paths.get(name);
+                return;
+            }
+        } catch (InvalidPathException excp) {
+            throw error("could not open %s", name);
+        }
+        _config = getInput(name);
+    }
+
     /** Return a Scanner reading from the file named NAME. */
     private Scanner getInput(String name) {
         try {
@@ -65,6 +251,27 @@ public final class Main {
         }
     }
 
+    /** Return a channel reading from the file named NAME. */
+    private FileChannel getChannel(String name) {
+        try {
+            return FileChannel.open(Paths.get(name));
+        } catch (IOException | InvalidPathException excp) {
+            throw error("could not open %s", name);
+        }
+    }
+
+    /** Return a channel writing to the file named NAME. */
+    private FileChannel getOutputChannel(String name) {
+        try {
+            return FileChannel.open(Paths.get(name),
+                                    StandardOpenOption.CREATE,
+                                    StandardOpenOption.TRUNCATE_EXISTING,
+                                    StandardOpenOption.WRITE);
+        } catch (IOException | InvalidPathException excp) {
+            throw error("could not open %s", name);
+        }
+    }
+
     /** Return a PrintStream writing to the file named NAME. */
     private PrintStream getOutput(String name) {
         try {
@@ -76,8 +283,31 @@ public final class Main {
 
     /** Configure an Enigma machine from the contents of configuration
      *  file _config and apply it to the messages in _input, sending the
-     *  results to _output. */
-    private void process() {
+     *  results to _output, and report _metrics, if kept. */
+    void process() {
+        if (_metrics != null) {
+            _metrics.register();
+        }
+        try {
+            if (_threads > 0) {
+                processParallel();
+            } else if (_pipeline) {
+                processPipeline();
+            } else if (_nio) {
+                processLines(readConfig());
+            } else {
+                processMessages();
+            }
+        } finally {
+            if (_metrics != null) {
+                _metrics.report(new PrintWriter(System.err));
+            }
+        }
+    }
+
+    /** Process the messages in _input, sending the results to
+     *  _output. */
+    private void processMessages() {
         Machine m = readConfig();
         _input.useDelimiter("\\n");
 
@@ -89,15 +319,182 @@ public final class Main {
             if (_input.hasNext("\\*.+")) {
                 setUp(m, _input.next());
             } else {
-                printMessageLine(m.convert(_input.next()));
+                String msg = convert(m, _input.next());
+                long start = now();
+                printMessageLine(msg);
+                record(Metrics.Phase.OUTPUT, start);
+            }
+        }
+    }
+
+    /** Process the messages in _lines as processMessages() does those in
+     *  _input, using M, which holds the configuration, sending the
+     *  results to _writer. */
+    void processLines(Machine m) {
+        if (!_lines.next() || !_lines.isSettings()) {
+            throw new enigma.EnigmaException("Bad config file");
+        }
+        char[] result = new char[0];
+        try {
+            do {
+                if (_lines.isSettings()) {
+                    setUp(m, _lines.line());
+                } else {
+                    int len = _lines.end() - _lines.start();
+                    if (result.length < len) {
+                        result = new char[Math.max(len, 2 * result.length)];
+                    }
+                    int n = convert(m, _lines.buffer(), _lines.start(), len,
+                                    result, 0);
+                    writeLine(result, 0, n);
+                }
+            } while (_lines.next());
+        } finally {
+            _writer.flush();
+        }
+    }
+
+    /** Process the messages in _lines as processLines does, but read,
+     *  convert and write them on separate threads, as described in
+     *  Pipeline. */
+    private void processPipeline() {
+        Machine m = readConfig();
+        ExecutorService pool = threadPerTaskExecutor();
+        try {
+            new Pipeline(this, m, _lines).run(pool);
+        } finally {
+            pool.shutdownNow();
+            _writer.flush();
+        }
+    }
+
+    /** Process the input as process() does, but convert the messages
+     *  following each settings line (which are independent, since each
+     *  settings line resets the machine) on _threads threads, each
+     *  with its own copy of the configured machine.  Results are written
+     *  in their original order; at most a few segments per thread are
+     *  held in memory at once. */
+    private void processParallel() {
+        Machine template = readConfig();
+        if (!_nio) {
+            _input.useDelimiter("\\n");
+        }
+        if (!nextLine() || !_lineIsSettings) {
+            throw new enigma.EnigmaException("Bad config file");
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(_threads);
+        ArrayDeque<Future<Segment>> pending = new ArrayDeque<>();
+        try {
+            boolean more = true;
+            while (more) {
+                String settings = _line;
+                ArrayList<String> lines = new ArrayList<>();
+                more = nextLine();
+                while (more && !_lineIsSettings) {
+                    lines.add(_line);
+                    more = nextLine();
+                }
+                pending.add(pool.submit(
+                    () -> convertSegment(template, settings, lines)));
+                while (pending.size() >= SEGMENTS_PER_THREAD * _threads
+                       || (!more && !pending.isEmpty())) {
+                    writeSegment(pending.remove());
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+            if (_nio) {
+                _writer.flush();
+            }
+        }
+    }
+
+    /** Advance _line to the next line of input, and set _lineIsSettings
+     *  to indicate whether it is a settings line.  Returns false if
+     *  there are no more lines. */
+    private boolean nextLine() {
+        if (_nio) {
+            if (!_lines.next()) {
+                return false;
+            }
+            _lineIsSettings = _lines.isSettings();
+            _line = _lines.line();
+        } else {
+            if (!_input.hasNext()) {
+                return false;
+            }
+            _lineIsSettings = _input.hasNext("\\*.+");
+            _line = _input.next();
+        }
+        return true;
+    }
+
+    /** The results of converting the messages that follow one settings
+     *  line. */
+    private static class Segment {
+        /** The converted message lines, in order. */
+        private final ArrayList<String> converted = new ArrayList<>();
+        /** The error that stopped the conversion, if any. */
+        private EnigmaException error;
+    }
+
+    /** Return the conversion of LINES by a copy of TEMPLATE set up
+     *  according to SETTINGS.  A segment that fails holds the lines
+     *  converted before the failure. */
+    private Segment convertSegment(Machine template, String settings,
+                                   ArrayList<String> lines) {
+        Segment result = new Segment();
+        try {
+            Machine m = template.copy();
+            setUp(m, settings);
+            for (String line : lines) {
+                result.converted.add(convert(m, line));
+            }
+        } catch (EnigmaException excp) {
+            result.error = excp;
+        }
+        return result;
+    }
+
+    /** Wait for SEGMENT and write its results, throwing its error if it
+     *  failed. */
+    private void writeSegment(Future<Segment> segment) {
+        Segment result;
+        try {
+            result = segment.get();
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw error("interrupted");
+        } catch (ExecutionException excp) {
+            if (excp.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) excp.getCause();
+            }
+            throw new Error(excp.getCause());
+        }
+        for (String msg : result.converted) {
+            if (_nio) {
+                writeLine(msg.toCharArray(), 0, msg.length());
+            } else {
+                long start = now();
+                printMessageLine(msg);
+                record(Metrics.Phase.OUTPUT, start);
             }
         }
+        if (result.error != null) {
+            throw result.error;
+        }
     }
 
     /** Return an Enigma machine configured from the contents of configuration
-     *  file _config. */
-    private Machine readConfig() {
+     *  file _config, or of the configuration image _image. */
+    Machine readConfig() {
+        long start = now();
         try {
+            if (_image != null) {
+                Machine m = ConfigImage.read(_image);
+                _alphabet = m.alphabet();
+                return m;
+            }
             _alphabet = alphabet();
             int numRotors = numRotors();
             int pawls = pawls();
@@ -108,6 +505,8 @@ public final class Main {
             return new Machine(_alphabet, numRotors, pawls, rotors);
         } catch (NoSuchElementException excp) {
             throw error("configuration file truncated");
+        } finally {
+            record(Metrics.Phase.CONFIG, start);
         }
     }
 
@@ -162,8 +561,33 @@ public final class Main {
     }
 
     /** Set M according to the specification given on SETTINGS,
-     *  which must have the format specified in the assignment. */
-    private void setUp(Machine M, String settings) {
+     *  which must have the format specified in the assignment.  The
+     *  result for each distinct settings line is cached, so that setting
+     *  up from a line seen recently only copies the cached machine's
+     *  rotors and plugboard into M, or, if M already has them, only
+     *  their positions. */
+    void setUp(Machine M, String settings) {
+        long start = now();
+        Object event = events() ? FlightEvents.beginSetUp() : null;
+        String key = SetupCache.key(settings, M.numRotors());
+        Machine template = _setups.get(key);
+        boolean cached = template != null;
+        if (cached) {
+            M.setUpLike(template);
+        } else {
+            parseSetUp(M, settings);
+            _setups.put(key, M.copy());
+        }
+        if (event != null) {
+            FlightEvents.endSetUp(event, settings, cached);
+        }
+        if (_metrics != null) {
+            _metrics.recordSetUp(start, cached);
+        }
+    }
+
+    /** Set M according to SETTINGS, as for setUp, by parsing SETTINGS. */
+    private void parseSetUp(Machine M, String settings) {
         String[] setting = settings.split(" ");
         if (!setting[0].equals("*")) {
             throw new enigma.EnigmaException("Incorrect setting "
@@ -200,6 +624,80 @@ public final class Main {
         M.setPlugboard(new Permutation(plugCycles, _alphabet));
     }
 
+    /** Return the conversion of MSG by M, recorded as endConvert
+     *  describes. */
+    private String convert(Machine m, String msg) {
+        long start = now();
+        Object event = beginConvert(msg.length());
+        String result = m.convert(msg);
+        endConvert(event, start, msg.length());
+        return result;
+    }
+
+    /** Convert the LEN characters of SRC starting at OFF into DST,
+     *  starting at DSTOFF, by M, as Machine.convert does, recording the
+     *  conversion as endConvert describes.  Returns the number of
+     *  characters written. */
+    int convert(Machine m, char[] src, int off, int len, char[] dst,
+                int dstOff) {
+        long start = now();
+        Object event = beginConvert(len);
+        int result = m.convert(src, off, len, dst, dstOff);
+        endConvert(event, start, len);
+        return result;
+    }
+
+    /** Write the LEN characters of MSG starting at OFF to _writer as one
+     *  line, in groups of five, recording the time taken in _metrics, if
+     *  kept. */
+    void writeLine(char[] msg, int off, int len) {
+        long start = now();
+        _writer.writeLine(msg, off, len);
+        record(Metrics.Phase.OUTPUT, start);
+    }
+
+    /** Returns true iff flight recorder events should be emitted: if
+     *  _metrics are kept or the flight recorder has been started.  See
+     *  FlightEvents. */
+    private boolean events() {
+        return _metrics != null || FlightEvents.recorderStarted();
+    }
+
+    /** Return a begun flight recorder event for the conversion of a
+     *  message of LENGTH characters, or null if the message is not large
+     *  enough to warrant one or events() is false. */
+    private Object beginConvert(int length) {
+        if (length < FlightEvents.LARGE_MESSAGE || !events()) {
+            return null;
+        }
+        return FlightEvents.beginConvert(length);
+    }
+
+    /** Record the conversion of a message of LENGTH characters, begun at
+     *  START (as returned by now()), in _metrics, if kept, and commit
+     *  EVENT, as returned by beginConvert, if it is not null. */
+    private void endConvert(Object event, long start, int length) {
+        if (event != null) {
+            FlightEvents.endConvert(event, length);
+        }
+        if (_metrics != null) {
+            _metrics.recordConvert(start, length);
+        }
+    }
+
+    /** Return the current time if _metrics are kept, and otherwise 0. */
+    private long now() {
+        return _metrics == null ? 0 : Metrics.now();
+    }
+
+    /** Record in _metrics, if kept, that PHASE ran from START (as
+     *  returned by now()) until now. */
+    private void record(Metrics.Phase phase, long start) {
+        if (_metrics != null) {
+            _metrics.record(phase, start);
+        }
+    }
+
     /** Print MSG in groups of five (except that the last group may
      *  have fewer letters). */
     private void printMessageLine(String msg) {
@@ -216,12 +714,51 @@ public final class Main {
     /** Alphabet used in this machine. */
     private Alphabet _alphabet;
 
+    /** Machines configured by recent settings lines. */
+    private final SetupCache _setups;
+
     /** Source of input messages. */
     private Scanner _input;
 
     /** Source of machine configuration. */
     private Scanner _config;
 
+    /** Configuration image, if the configuration is precompiled. */
+    private Path _image;
+
     /** File for encoded/decoded messages. */
     private PrintStream _output;
+
+    /** True iff input and output go through _lines and _writer rather
+     *  than _input and _output. */
+    private boolean _nio;
+
+    /** Source of input messages when _nio. */
+    private LineReader _lines;
+
+    /** Destination of encoded/decoded messages when _nio. */
+    private GroupWriter _writer;
+
+    /** Number of threads converting messages, or 0 to convert them as
+     *  they are read. */
+    private int _threads;
+
+    /** True iff input is processed by a Pipeline. */
+    private boolean _pipeline;
+
+    /** Counts and times of processing, or null if they are not kept. */
+    private Metrics _metrics;
+
+    /** Segments that may be waiting to be written, per thread, when
+     *  converting in parallel. */
+    private static final int SEGMENTS_PER_THREAD = 4;
+
+    /** Estimated bytes of configured machines cached by setUp. */
+    private static final long SETUP_CACHE_BYTES = 16 << 20;
+
+    /** The most recent line read by nextLine(). */
+    private String _line;
+
+    /** True iff _line is a settings line. */
+    private boolean _lineIsSettings;
 }
@@ -0,0 +1,285 @@
+package enigma;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import static enigma.EnigmaException.*;
+
+/** Counts and latencies of the phases of Main's processing: reading the
+ *  configuration, applying settings lines, converting messages and
+ *  writing the results.  Counters are LongAdders and latencies go into
+ *  histograms whose buckets are powers of two nanoseconds, so that
+ *  recording costs a few uncontended atomic additions, from any number
+ *  of threads.  Conversions are also recorded by message length, in
+ *  buckets that are powers of two characters.  Main keeps a Metrics
+ *  only when asked to (--metrics), and otherwise does not read the
+ *  clock.  Main's flight recorder events are in FlightEvents.
+ *  @author Edan Bash
+ */
+final class Metrics implements MetricsMXBean {
+
+    /** The phases of processing that are timed. */
+    enum Phase {
+        /** Reading the configuration file or image. */
+        CONFIG,
+        /** Applying a settings line. */
+        SETUP,
+        /** Converting a message line. */
+        CONVERT,
+        /** Writing a converted message line. */
+        OUTPUT;
+
+        /** Return my name as used in reports. */
+        String label() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    /** Empty metrics. */
+    Metrics() {
+        _phases = new Histogram[Phase.values().length];
+        for (int i = 0; i < _phases.length; i += 1) {
+            _phases[i] = new Histogram();
+        }
+        _lengths = new Histogram[Integer.SIZE + 1];
+        for (int i = 0; i < _lengths.length; i += 1) {
+            _lengths[i] = new Histogram();
+        }
+    }
+
+    /** Return the current time, for use as the START of an interval
+     *  passed to record. */
+    static long now() {
+        return System.nanoTime();
+    }
+
+    /** Record that PHASE ran from START until now. */
+    void record(Phase phase, long start) {
+        _phases[phase.ordinal()].record(System.nanoTime() - start);
+    }
+
+    /** Record that a settings line was applied from START until now,
+     *  from the cache of configured machines iff CACHED. */
+    void recordSetUp(long start, boolean cached) {
+        record(Phase.SETUP, start);
+        _setups.increment();
+        if (cached) {
+            _cachedSetups.increment();
+        }
+    }
+
+    /** Record that a message of LENGTH characters was converted from
+     *  START until now. */
+    void recordConvert(long start, int length) {
+        long nanos = System.nanoTime() - start;
+        _phases[Phase.CONVERT.ordinal()].record(nanos);
+        _lengths[Integer.SIZE - Integer.numberOfLeadingZeros(length)]
+            .record(nanos);
+        _messages.increment();
+        _characters.add(length);
+    }
+
+    /** Register me with the platform MBean server as NAME, replacing any
+     *  metrics registered before. */
+    void register() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(NAME);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(this, name);
+        } catch (JMException excp) {
+            throw error("could not register metrics: %s",
+                        excp.getMessage());
+        }
+    }
+
+    @Override
+    public long getCharacters() {
+        return _characters.sum();
+    }
+
+    @Override
+    public long getMessages() {
+        return _messages.sum();
+    }
+
+    @Override
+    public long getSetups() {
+        return _setups.sum();
+    }
+
+    @Override
+    public long getCachedSetups() {
+        return _cachedSetups.sum();
+    }
+
+    @Override
+    public Map<String, Long> getPhaseCounts() {
+        LinkedHashMap<String, Long> result = new LinkedHashMap<>();
+        for (Phase phase : Phase.values()) {
+            result.put(phase.label(), _phases[phase.ordinal()].count());
+        }
+        return result;
+    }
+
+    @Override
+    public Map<String, Long> getPhaseNanos() {
+        LinkedHashMap<String, Long> result = new LinkedHashMap<>();
+        for (Phase phase : Phase.values()) {
+            result.put(phase.label(), _phases[phase.ordinal()].nanos());
+        }
+        return result;
+    }
+
+    @Override
+    public Map<String, Long> getPhaseMedianNanos() {
+        return percentiles(0.5);
+    }
+
+    @Override
+    public Map<String, Long> getPhaseP99Nanos() {
+        return percentiles(0.99);
+    }
+
+    /** Return the Qth quantile of the time of each phase, by phase
+     *  name. */
+    private Map<String, Long> percentiles(double q) {
+        LinkedHashMap<String, Long> result = new LinkedHashMap<>();
+        for (Phase phase : Phase.values()) {
+            result.put(phase.label(),
+                       _phases[phase.ordinal()].percentile(q));
+        }
+        return result;
+    }
+
+    /** Return the histogram of the times of PHASE. */
+    Histogram phase(Phase phase) {
+        return _phases[phase.ordinal()];
+    }
+
+    @Override
+    public String getReport() {
+        StringWriter result = new StringWriter();
+        report(new PrintWriter(result));
+        return result.toString();
+    }
+
+    /** Print a summary of my counts and latencies on OUT: totals, then
+     *  a line per phase and a line per message length bucket in which
+     *  there were conversions. */
+    void report(PrintWriter out) {
+        out.printf("%d messages, %d characters, %d setups (%d cached)%n",
+                   getMessages(), getCharacters(), getSetups(),
+                   getCachedSetups());
+        out.printf("%-12s %10s %12s %10s %10s%n", "phase", "count",
+                   "total ms", "p50 us", "p99 us");
+        for (Phase phase : Phase.values()) {
+            Histogram h = _phases[phase.ordinal()];
+            out.printf("%-12s %10d %12.3f %10.1f %10.1f%n", phase.label(),
+                       h.count(), h.nanos() / 1e6, h.percentile(0.5) / 1e3,
+                       h.percentile(0.99) / 1e3);
+        }
+        out.printf("%-12s %10s %12s %10s %10s%n", "length", "count",
+                   "total ms", "p50 us", "p99 us");
+        for (int b = 0; b < _lengths.length; b += 1) {
+            Histogram h = _lengths[b];
+            if (h.count() == 0) {
+                continue;
+            }
+            String range = b <= 1 ? Integer.toString(b)
+                : (1L << (b - 1)) + "-" + ((1L << b) - 1);
+            out.printf("%-12s %10d %12.3f %10.1f %10.1f%n", range,
+                       h.count(), h.nanos() / 1e6, h.percentile(0.5) / 1e3,
+                       h.percentile(0.99) / 1e3);
+        }
+        out.flush();
+    }
+
+    /** A histogram of durations, in buckets whose bounds are powers of
+     *  two nanoseconds: bucket B holds durations of B significant
+     *  bits. */
+    static final class Histogram {
+
+        /** Record a duration of NANOS nanoseconds. */
+        void record(long nanos) {
+            nanos = Math.max(nanos, 0);
+            _counts.incrementAndGet(Long.SIZE
+                                    - Long.numberOfLeadingZeros(nanos));
+            _nanos.add(nanos);
+        }
+
+        /** Return the number of durations recorded. */
+        long count() {
+            long result = 0;
+            for (int b = 0; b < _counts.length(); b += 1) {
+                result += _counts.get(b);
+            }
+            return result;
+        }
+
+        /** Return the sum of the durations recorded. */
+        long nanos() {
+            return _nanos.sum();
+        }
+
+        /** Return an upper bound, at most twice too large, on the Qth
+         *  quantile (0 < Q <= 1) of the durations recorded, or 0 if
+         *  there are none. */
+        long percentile(double q) {
+            long[] counts = new long[_counts.length()];
+            long total = 0;
+            for (int b = 0; b < counts.length; b += 1) {
+                counts[b] = _counts.get(b);
+                total += counts[b];
+            }
+            long rank = (long) Math.ceil(q * total);
+            long seen = 0;
+            for (int b = 0; b < counts.length; b += 1) {
+                seen += counts[b];
+                if (seen >= rank && counts[b] > 0) {
+                    return b == Long.SIZE ? Long.MAX_VALUE : (1L << b) - 1;
+                }
+            }
+            return 0;
+        }
+
+        /** Number of durations recorded in each bucket. */
+        private final AtomicLongArray _counts =
+            new AtomicLongArray(Long.SIZE + 1);
+
+        /** Sum of the durations recorded. */
+        private final LongAdder _nanos = new LongAdder();
+    }
+
+    /** Name under which metrics are registered as an MBean. */
+    static final String NAME = "enigma:type=Metrics";
+
+    /** Times of each phase, indexed by ordinal. */
+    private final Histogram[] _phases;
+
+    /** Times of conversions, by the number of significant bits of the
+     *  message's length. */
+    private final Histogram[] _lengths;
+
+    /** Numbers of message characters and lines converted. */
+    private final LongAdder _characters = new LongAdder(),
+        _messages = new LongAdder();
+
+    /** Numbers of settings lines applied, and of those applied from the
+     *  cache. */
+    private final LongAdder _setups = new LongAdder(),
+        _cachedSetups = new LongAdder();
+
+}
@@ -0,0 +1,41 @@
+package enigma;
+
+import java.util.Map;
+
+/** The management interface of Metrics, through which a JMX client
+ *  (such as jconsole) reads the counts and latencies recorded by Main.
+ *  Times are in nanoseconds; percentiles are upper bounds, to within a
+ *  factor of two.
+ *  @author Edan Bash
+ */
+public interface MetricsMXBean {
+
+    /** Return the number of message characters converted. */
+    long getCharacters();
+
+    /** Return the number of message lines converted. */
+    long getMessages();
+
+    /** Return the number of settings lines applied. */
+    long getSetups();
+
+    /** Return the number of settings lines applied from the cache of
+     *  configured machines. */
+    long getCachedSetups();
+
+    /** Return the number of times each phase was timed, by phase name. */
+    Map<String, Long> getPhaseCounts();
+
+    /** Return the total time spent in each phase, by phase name. */
+    Map<String, Long> getPhaseNanos();
+
+    /** Return the median time of each phase, by phase name. */
+    Map<String, Long> getPhaseMedianNanos();
+
+    /** Return the 99th percentile time of each phase, by phase name. */
+    Map<String, Long> getPhaseP99Nanos();
+
+    /** Return the report that Main prints on exit. */
+    String getReport();
+
+}
@@ -0,0 +1,136 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+/** The suite of all JUnit tests for the Metrics class.
+ *  @author Edan Bash
+ */
+public class MetricsTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(30);
+
+    @Test
+    public void testHistogram() {
+        Metrics.Histogram h = new Metrics.Histogram();
+        assertEquals(0, h.percentile(0.5));
+        for (int i = 0; i < 98; i += 1) {
+            h.record(100);
+        }
+        h.record(5000);
+        h.record(1000000);
+        assertEquals(100, h.count());
+        assertEquals(98 * 100 + 5000 + 1000000, h.nanos());
+        assertEquals(127, h.percentile(0.5));
+        assertEquals(8191, h.percentile(0.99));
+        assertEquals((1 << 20) - 1, h.percentile(1));
+        h.record(-1);
+        assertEquals(0, new Metrics.Histogram().count());
+        assertEquals(101, h.count());
+    }
+
+    @Test
+    public void testCounts() {
+        Metrics metrics = new Metrics();
+        long start = Metrics.now();
+        metrics.recordSetUp(start, false);
+        metrics.recordSetUp(start, true);
+        metrics.recordConvert(start, 10);
+        metrics.recordConvert(start, 1000);
+        metrics.record(Metrics.Phase.OUTPUT, start);
+        assertEquals(2, metrics.getSetups());
+        assertEquals(1, metrics.getCachedSetups());
+        assertEquals(2, metrics.getMessages());
+        assertEquals(1010, metrics.getCharacters());
+        assertEquals(Long.valueOf(0), metrics.getPhaseCounts().get("config"));
+        assertEquals(Long.valueOf(2), metrics.getPhaseCounts().get("setup"));
+        assertEquals(Long.valueOf(2),
+                     metrics.getPhaseCounts().get("convert"));
+        assertEquals(Long.valueOf(1), metrics.getPhaseCounts().get("output"));
+        String report = metrics.getReport();
+        assertTrue(report.startsWith("2 messages, 1010 characters, "
+                                     + "2 setups (1 cached)"));
+        assertTrue(report.contains("\n8-15 "));
+        assertTrue(report.contains("\n512-1023 "));
+        assertFalse(report.contains("\n16-31 "));
+    }
+
+    @Test
+    public void testLabelsIgnoreLocale() {
+        Locale saved = Locale.getDefault();
+        try {
+            Locale.setDefault(Locale.forLanguageTag("tr-TR"));
+            assertEquals("config", Metrics.Phase.CONFIG.label());
+            assertTrue(new Metrics().getPhaseCounts().containsKey("config"));
+        } finally {
+            Locale.setDefault(saved);
+        }
+    }
+
+    @Test
+    public void testMBean() throws JMException {
+        Metrics metrics = new Metrics();
+        metrics.register();
+        metrics.recordConvert(Metrics.now(), 42);
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(Metrics.NAME);
+        assertEquals(42L, server.getAttribute(name, "Characters"));
+        assertEquals(1L, server.getAttribute(name, "Messages"));
+        new Metrics().register();
+        assertEquals(0L, server.getAttribute(name, "Characters"));
+        server.unregisterMBean(name);
+    }
+
+    @Test
+    public void testSetupEvents() throws IOException {
+        File config = File.createTempFile("config", ".conf");
+        config.deleteOnExit();
+        Files.write(config.toPath(), Arrays.asList(
+            "ABCDEFGHIJKLMNOPQRSTUVWXYZ",
+            " 3 2",
+            " I MQ      (AELTPHQXRU) (BKNW) (CMOY) (DFG) (IV) (JZ) (S)",
+            " II ME     (FIXVYOMW) (CDQJ) (EUSH) (BL) (ZAR) (GT) (KN) (P)",
+            " B R       (AE) (BN) (CK) (DQ) (FU) (GY) (HW) (IJ) (LO) (MP) "
+            + "(RX) (SZ) (TV)"));
+        File dump = File.createTempFile("metrics", ".jfr");
+        dump.deleteOnExit();
+        Main main = new Main(config.getPath());
+        Machine m = main.readConfig();
+        try (Recording recording = new Recording()) {
+            recording.enable("enigma.SetUp");
+            recording.start();
+            main.setUp(m, "* B II I AB (QZ) (CD)");
+            main.setUp(m, "* B II I AB (QZ)  (CD)");
+            recording.stop();
+            recording.dump(dump.toPath());
+        }
+        List<RecordedEvent> events = RecordingFile.readAllEvents(
+            dump.toPath());
+        assertEquals(2, events.size());
+        assertEquals("* B II I AB (QZ) (CD)",
+                     events.get(0).getString("settings"));
+        assertFalse(events.get(0).getBoolean("cached"));
+        assertTrue(events.get(1).getBoolean("cached"));
+    }
+
+}
@@ -15,13 +15,16 @@ class MovingRotor extends Rotor {
     MovingRotor(String name, Permutation perm, String notches) {
         super(name, perm);
 
+        _notches = new boolean[2 * size()];
         for (int i = 0; i < notches.length(); i += 1) {
-            if (!alphabet().contains(notches.charAt(i))) {
+            int notch = alphabet().toInt(notches.charAt(i));
+            if (notch < 0) {
                 throw new enigma.EnigmaException("Bad Notch: "
                         + notches.charAt(i));
             }
+            _notches[notch] = true;
+            _notches[notch + size()] = true;
         }
-        _notches = notches;
     }
 
     @Override
@@ -30,10 +33,8 @@ class MovingRotor extends Rotor {
     }
 
     @Override
-    boolean atNotch() {
-        char notch = alphabet().toChar(permutation().wrap(setting()
-                + ringSetting()));
-        return _notches.contains(Character.toString(notch));
+    boolean atNotch(int setting) {
+        return _notches[setting + ringSetting()];
     }
 
     @Override
@@ -41,7 +42,9 @@ class MovingRotor extends Rotor {
         set((setting() + 1) % size());
     }
 
-    /** Contains the notches of the rotor. */
-    private String _notches;
+    /** True at each position (setting plus ring setting) at which I am at
+     *  a notch.  Covers two turns of the rotor, so that the sum need not
+     *  be wrapped. */
+    private final boolean[] _notches;
 
 }
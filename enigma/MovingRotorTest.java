@@ -81,4 +81,48 @@ public class MovingRotorTest {
         assertTrue(rotor.atNotch());
     }
 
+    @Test
+    public void checkLargeAlphabet() {
+        StringBuilder chars = new StringBuilder();
+        for (char c = '\u0400'; chars.length() < 300; c += 1) {
+            chars.append(c);
+        }
+        Alphabet big = new Alphabet(chars.toString());
+        Permutation perm = new Permutation("(" + chars.substring(0, 150)
+                + ")(" + chars.substring(200, 299) + ")", big);
+        rotor = new MovingRotor("Big", perm, "");
+        for (int s = 0; s < big.size(); s += 7) {
+            rotor.set(s);
+            for (int p = 0; p < big.size(); p += 1) {
+                assertEquals(perm.wrap(perm.permute(p + s) - s),
+                             rotor.convertForward(p));
+                assertEquals(p, rotor.convertBackward(
+                                    rotor.convertForward(p)));
+            }
+        }
+    }
+
+    @Test
+    public void checkHugeAlphabet() {
+        StringBuilder chars = new StringBuilder();
+        for (char c = '\u0100'; chars.length() < 50000; c += 1) {
+            if (!Character.isWhitespace(c)) {
+                chars.append(c);
+            }
+        }
+        Alphabet huge = new Alphabet(chars.toString());
+        Permutation perm = new Permutation("(" + chars.substring(0, 1000)
+                + ")", huge);
+        rotor = new MovingRotor("Huge", perm, "");
+        for (int s = 0; s < huge.size(); s += 4999) {
+            rotor.set(s);
+            for (int p = 0; p < huge.size(); p += 97) {
+                assertEquals(perm.wrap(perm.permute(p + s) - s),
+                             rotor.convertForward(p));
+                assertEquals(p, rotor.convertBackward(
+                                    rotor.convertForward(p)));
+            }
+        }
+    }
+
 }
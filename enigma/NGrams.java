@@ -0,0 +1,276 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+import static enigma.EnigmaException.*;
+
+/** A model of a language as the frequencies of its n-grams (runs of N
+ *  consecutive characters), used to score candidate decryptions.  Each
+ *  n-gram over an alphabet has a log probability, estimated from a
+ *  sample (corpus) of the language; n-grams absent from the corpus get
+ *  a floor value well below that of any present.  The fitness of a text
+ *  is the sum of the log probabilities of its n-grams.
+ *
+ *  A model may be compiled to a file, consisting of a header (magic
+ *  number, version, alphabet size, n), the characters of the alphabet,
+ *  and the table of log probabilities as floats, indexed by the n-grams'
+ *  characters' indices as the digits of a number in base alphabet size,
+ *  first most significant.  All values are big-endian.  A compiled model
+ *  is loaded by mapping the file into memory.
+ *  @author Edan Bash
+ */
+final class NGrams {
+
+    /** Compile a model as specified by ARGS, which may begin with the
+     *  option
+     *    --ngram=N       model N-grams (by default, 4);
+     *  followed by the name of a configuration file, whose alphabet the
+     *  model is over, the name of a file containing the corpus and the
+     *  name of the file to write the model to. */
+    static void compile(String[] args) {
+        int n = DEFAULT_N;
+        int first = 0;
+        for (; first < args.length && args[first].startsWith("--");
+             first += 1) {
+            String option = args[first];
+            if (option.startsWith("--ngram=")) {
+                try {
+                    n = Integer.parseInt(option.substring(8));
+                } catch (NumberFormatException excp) {
+                    throw error("bad number in %s", option);
+                }
+            } else {
+                throw error("unknown option %s", option);
+            }
+        }
+        if (args.length - first != 3) {
+            throw error("usage: compile-ngrams [--ngram=N] CONFIG CORPUS "
+                        + "MODEL");
+        }
+        Alphabet alphabet = new Main(args[first]).readConfig().alphabet();
+        new NGrams(alphabet, n, readText(args[first + 1]))
+            .write(Paths.get(args[first + 2]));
+    }
+
+    /** Return the contents of the file named NAME. */
+    static String readText(String name) {
+        try {
+            return new String(Files.readAllBytes(Paths.get(name)),
+                              Charset.defaultCharset());
+        } catch (IOException | InvalidPathException excp) {
+            throw error("could not open %s", name);
+        }
+    }
+
+    /** A model of the n-grams of length N over ALPHABET, trained on
+     *  CORPUS.  Characters of CORPUS that are not in ALPHABET are mapped
+     *  to upper case if that puts them in ALPHABET, and are otherwise
+     *  skipped. */
+    NGrams(Alphabet alphabet, int n, CharSequence corpus) {
+        _alphabet = alphabet;
+        _size = alphabet.size();
+        _n = n;
+        long entries = 1;
+        for (int k = 0; k < n && entries <= MAX_ENTRIES; k += 1) {
+            entries *= _size;
+        }
+        if (n < 1 || entries > MAX_ENTRIES) {
+            throw error("cannot model %d-grams over %d characters", n,
+                        _size);
+        }
+        long[] counts = new long[(int) entries];
+        int mod = (int) (entries / _size);
+        int index = 0, run = 0;
+        long total = 0;
+        for (int i = 0; i < corpus.length(); i += 1) {
+            int c = alphabet.toInt(corpus.charAt(i));
+            if (c < 0) {
+                c = alphabet.toInt(Character.toUpperCase(corpus.charAt(i)));
+            }
+            if (c < 0) {
+                continue;
+            }
+            index = (index % mod) * _size + c;
+            run += 1;
+            if (run >= n) {
+                counts[index] += 1;
+                total += 1;
+            }
+        }
+        if (total == 0) {
+            throw error("corpus has no %d-grams", n);
+        }
+        _table = new float[(int) entries];
+        for (int k = 0; k < _table.length; k += 1) {
+            double count = counts[k] == 0 ? FLOOR : counts[k];
+            _table[k] = (float) Math.log10(count / total);
+        }
+        _high = (int) (entries / _size);
+    }
+
+    /** A model of the n-grams of length N over ALPHABET, with log
+     *  probabilities TABLE. */
+    private NGrams(Alphabet alphabet, int n, float[] table) {
+        _alphabet = alphabet;
+        _size = alphabet.size();
+        _n = n;
+        _table = table;
+        _high = table.length / _size;
+    }
+
+    /** Write me to the file named FILE, replacing any existing file. */
+    void write(Path file) {
+        ByteBuffer image =
+            ByteBuffer.allocate(HEADER_SIZE + 2 * _size + 4 * _table.length);
+        image.putInt(MAGIC).putInt(VERSION).putInt(_size).putInt(_n);
+        for (int i = 0; i < _size; i += 1) {
+            image.putChar(_alphabet.toChar(i));
+        }
+        image.asFloatBuffer().put(_table);
+        image.rewind();
+        try (FileChannel channel =
+                 FileChannel.open(file, StandardOpenOption.CREATE,
+                                  StandardOpenOption.TRUNCATE_EXISTING,
+                                  StandardOpenOption.WRITE)) {
+            while (image.hasRemaining()) {
+                channel.write(image);
+            }
+        } catch (IOException excp) {
+            throw error("could not write %s", file);
+        }
+    }
+
+    /** Returns true iff the file named FILE begins as a compiled model
+     *  does. */
+    static boolean isModel(Path file) {
+        try (FileChannel channel = FileChannel.open(file)) {
+            ByteBuffer magic = ByteBuffer.allocate(4);
+            while (magic.hasRemaining() && channel.read(magic) >= 0) {
+                continue;
+            }
+            return !magic.hasRemaining() && magic.getInt(0) == MAGIC;
+        } catch (IOException excp) {
+            return false;
+        }
+    }
+
+    /** Return the model compiled to the file named FILE. */
+    static NGrams read(Path file) {
+        ByteBuffer image;
+        try (FileChannel channel = FileChannel.open(file)) {
+            image = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                                channel.size());
+        } catch (IOException excp) {
+            throw error("could not open %s", file);
+        }
+        try {
+            if (image.getInt() != MAGIC || image.getInt() != VERSION) {
+                throw error("%s is not an n-gram model", file);
+            }
+            int size = image.getInt();
+            int n = image.getInt();
+            char[] chars = new char[size];
+            image.asCharBuffer().get(chars);
+            image.position(image.position() + 2 * size);
+            long entries = 1;
+            for (int k = 0; k < n && entries <= MAX_ENTRIES; k += 1) {
+                entries *= size;
+            }
+            if (n < 1 || entries > MAX_ENTRIES) {
+                throw error("%s is not an n-gram model", file);
+            }
+            float[] table = new float[(int) entries];
+            image.asFloatBuffer().get(table);
+            return new NGrams(new Alphabet(new String(chars)), n, table);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException
+                 | NegativeArraySizeException excp) {
+            throw error("n-gram model %s truncated", file);
+        }
+    }
+
+    /** Return my alphabet. */
+    Alphabet alphabet() {
+        return _alphabet;
+    }
+
+    /** Return the length of my n-grams. */
+    int n() {
+        return _n;
+    }
+
+    /** Return the log probability of the n-gram starting at index FROM
+     *  of TEXT, whose elements are indices in my alphabet. */
+    float score(int[] text, int from) {
+        int index = 0;
+        for (int k = from; k < from + _n; k += 1) {
+            index = index * _size + text[k];
+        }
+        return _table[index];
+    }
+
+    /** Return the fitness of TEXT, whose elements are indices in my
+     *  alphabet. */
+    double score(int[] text) {
+        if (text.length < _n) {
+            return 0;
+        }
+        float[] table = _table;
+        int size = _size, high = _high;
+        int index = 0;
+        for (int k = 0; k < _n - 1; k += 1) {
+            index = index * size + text[k];
+        }
+        double result = 0;
+        for (int j = _n - 1, k = 0; j < text.length; j += 1, k += 1) {
+            index = index * size + text[j];
+            result += table[index];
+            index -= text[k] * high;
+        }
+        return result;
+    }
+
+    /** Identifies a compiled model ("EnNg"). */
+    private static final int MAGIC = 0x456e4e67;
+
+    /** Version of the compiled layout. */
+    private static final int VERSION = 1;
+
+    /** Size of the header. */
+    private static final int HEADER_SIZE = 16;
+
+    /** Default n-gram length. */
+    static final int DEFAULT_N = 4;
+
+    /** Largest number of n-grams in a model. */
+    private static final long MAX_ENTRIES = 1 << 26;
+
+    /** Count taken for n-grams absent from the corpus. */
+    private static final double FLOOR = 0.01;
+
+    /** Alphabet of my n-grams. */
+    private final Alphabet _alphabet;
+
+    /** Size of _alphabet. */
+    private final int _size;
+
+    /** Length of my n-grams. */
+    private final int _n;
+
+    /** Log probability of each n-gram, indexed by its characters' indices
+     *  as the digits of a number in base _size, first most significant. */
+    private final float[] _table;
+
+    /** Place value of the first character of an n-gram in indexing
+     *  _table: _size to the power _n - 1. */
+    private final int _high;
+
+}
@@ -0,0 +1,158 @@
+package enigma;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/** Converts long messages on several threads.  The message is split into
+ *  chunks; each chunk is converted by its own copy of the machine, first
+ *  advanced (with Machine.seek) to the position at which the chunk
+ *  starts.  The result is the same as that of Machine.convert.
+ *  @author Edan Bash
+ */
+final class ParallelConverter {
+
+    /** A converter that runs on POOL, splitting messages into chunks of
+     *  CHUNKSIZE characters.  The caller owns POOL, and shuts it down
+     *  when done with me. */
+    ParallelConverter(ForkJoinPool pool, int chunkSize) {
+        if (chunkSize <= 0) {
+            throw new enigma.EnigmaException("Chunk size must be positive");
+        }
+        _pool = pool;
+        _chunkSize = chunkSize;
+    }
+
+    /** Converts the LEN characters of SRC starting at OFF into DST,
+     *  starting at DSTOFF, skipping whitespace and leaving M as
+     *  M.convert(SRC, OFF, LEN, DST, DSTOFF) would.  SRC and DST must not
+     *  overlap.  Returns the number of characters written. */
+    int convert(Machine m, char[] src, int off, int len, char[] dst,
+                int dstOff) {
+        int chunks = (int) (((long) len + _chunkSize - 1) / _chunkSize);
+        if (chunks <= 1) {
+            return m.convert(src, off, len, dst, dstOff);
+        }
+        int[] starts = new int[chunks + 1];
+        _pool.invoke(new Count(src, off, len, starts, 0, chunks));
+        for (int k = 0; k < chunks; k += 1) {
+            starts[k + 1] += starts[k];
+        }
+        _pool.invoke(new Convert(m, src, off, len, dst, dstOff, starts,
+                                 0, chunks));
+        m.seek(starts[chunks]);
+        return starts[chunks];
+    }
+
+    /** Counts the characters to be converted in chunks LO .. HI - 1 of a
+     *  message, storing the count for chunk K in STARTS[K + 1]. */
+    private final class Count extends RecursiveAction {
+
+        /** A task counting chunks LO .. HI - 1 of the LEN characters of
+         *  SRC starting at OFF into STARTS. */
+        Count(char[] src, int off, int len, int[] starts, int lo, int hi) {
+            _src = src;
+            _off = off;
+            _len = len;
+            _starts = starts;
+            _lo = lo;
+            _hi = hi;
+        }
+
+        @Override
+        protected void compute() {
+            if (_hi - _lo > 1) {
+                int mid = (_lo + _hi) >>> 1;
+                invokeAll(new Count(_src, _off, _len, _starts, _lo, mid),
+                          new Count(_src, _off, _len, _starts, mid, _hi));
+                return;
+            }
+            int start = _lo * _chunkSize;
+            int end = Math.min(_len, start + _chunkSize);
+            int count = 0;
+            for (int i = _off + start; i < _off + end; i += 1) {
+                if (!Character.isWhitespace(_src[i])) {
+                    count += 1;
+                }
+            }
+            _starts[_lo + 1] = count;
+        }
+
+        /** The message. */
+        private final char[] _src;
+        /** Start of the message in _src. */
+        private final int _off;
+        /** Length of the message. */
+        private final int _len;
+        /** Receives the counts. */
+        private final int[] _starts;
+        /** First chunk counted. */
+        private final int _lo;
+        /** Chunk after the last counted. */
+        private final int _hi;
+    }
+
+    /** Converts chunks LO .. HI - 1 of a message. */
+    private final class Convert extends RecursiveAction {
+
+        /** A task converting chunks LO .. HI - 1 of the LEN characters of
+         *  SRC starting at OFF into DST starting at DSTOFF, using copies of
+         *  M.  STARTS[K] is the number of characters converted before
+         *  chunk K. */
+        Convert(Machine m, char[] src, int off, int len, char[] dst,
+                int dstOff, int[] starts, int lo, int hi) {
+            _machine = m;
+            _src = src;
+            _off = off;
+            _len = len;
+            _dst = dst;
+            _dstOff = dstOff;
+            _starts = starts;
+            _lo = lo;
+            _hi = hi;
+        }
+
+        @Override
+        protected void compute() {
+            if (_hi - _lo > 1) {
+                int mid = (_lo + _hi) >>> 1;
+                invokeAll(new Convert(_machine, _src, _off, _len, _dst,
+                                      _dstOff, _starts, _lo, mid),
+                          new Convert(_machine, _src, _off, _len, _dst,
+                                      _dstOff, _starts, mid, _hi));
+                return;
+            }
+            int start = _lo * _chunkSize;
+            int end = Math.min(_len, start + _chunkSize);
+            Machine m = _machine.copy();
+            m.seek(_starts[_lo]);
+            m.convert(_src, _off + start, end - start, _dst,
+                      _dstOff + _starts[_lo]);
+        }
+
+        /** The machine at the start of the message. */
+        private final Machine _machine;
+        /** The message. */
+        private final char[] _src;
+        /** Start of the message in _src. */
+        private final int _off;
+        /** Length of the message. */
+        private final int _len;
+        /** Receives the result. */
+        private final char[] _dst;
+        /** Start of the result in _dst. */
+        private final int _dstOff;
+        /** Characters converted before each chunk. */
+        private final int[] _starts;
+        /** First chunk converted. */
+        private final int _lo;
+        /** Chunk after the last converted. */
+        private final int _hi;
+    }
+
+    /** Pool on which I run. */
+    private final ForkJoinPool _pool;
+
+    /** Number of message characters in each chunk. */
+    private final int _chunkSize;
+
+}
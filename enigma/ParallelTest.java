@@ -0,0 +1,120 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+/** The suite of all JUnit tests for Main's --parallel option.
+ *  @author Edan Bash
+ */
+public class ParallelTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(60);
+
+    /** Return a new temporary file, deleted on exit. */
+    private File temp(String suffix) throws IOException {
+        File file = File.createTempFile("parallel", suffix);
+        file.deleteOnExit();
+        return file;
+    }
+
+    /** Return a configuration file. */
+    private File config() throws IOException {
+        File config = temp(".conf");
+        Files.write(config.toPath(), Arrays.asList(
+            "ABCDEFGHIJKLMNOPQRSTUVWXYZ",
+            " 4 3",
+            " I MQ      (AELTPHQXRU) (BKNW) (CMOY) (DFG) (IV) (JZ) (S)",
+            " II ME     (FIXVYOMW) (CDQJ) (EUSH) (BL) (ZAR) (GT) (KN) (P)",
+            " III MV    (ABDHPEJT) (CFLVMZOYQIRWUKXSG) (N)",
+            " B R       (AE) (BN) (CK) (DQ) (FU) (GY) (HW) (IJ) (LO) (MP) "
+            + "(RX) (SZ) (TV)"));
+        return config;
+    }
+
+    /** Return an input file of SEGMENTS random segments, in which the
+     *  segment numbered BAD, if any, has an invalid settings line. */
+    private File input(int segments, int bad) throws IOException {
+        Random random = new Random(42);
+        ArrayList<String> lines = new ArrayList<>();
+        for (int s = 0; s < segments; s += 1) {
+            lines.add("* B I II " + (s == bad ? "IV " : "III ")
+                      + (char) ('A' + random.nextInt(26)) + "XL (AQ) ("
+                      + (char) ('C' + random.nextInt(14)) + "Z)");
+            int messages = random.nextInt(40);
+            for (int k = 0; k < messages; k += 1) {
+                int len = random.nextInt(80);
+                StringBuilder msg = new StringBuilder();
+                for (int i = 0; i < len; i += 1) {
+                    msg.append(random.nextInt(8) == 0 ? ' '
+                               : (char) ('A' + random.nextInt(26)));
+                }
+                lines.add(msg.toString());
+            }
+        }
+        File input = temp(".in");
+        Files.write(input.toPath(), lines);
+        return input;
+    }
+
+    /** Return the output of Main with options OPTIONS and arguments
+     *  CONFIG and INPUT, which fails iff FAILS. */
+    private byte[] run(String[] options, File config, File input,
+                       boolean fails) throws IOException {
+        File output = temp(".out");
+        ArrayList<String> args = new ArrayList<>(Arrays.asList(options));
+        args.addAll(Arrays.asList(config.getPath(), input.getPath(),
+                                  output.getPath()));
+        try {
+            new Main(args.toArray(new String[0])).process();
+            assertFalse("did not fail", fails);
+        } catch (EnigmaException excp) {
+            assertTrue(excp.getMessage(), fails);
+        }
+        return Files.readAllBytes(output.toPath());
+    }
+
+    /** Check that Main with --parallel=N for several N, with and without
+     *  --nio, writes the same output as without --parallel, for an input
+     *  of SEGMENTS segments, of which the one numbered BAD, if any,
+     *  fails. */
+    private void check(int segments, int bad) throws IOException {
+        File config = config();
+        File input = input(segments, bad);
+        boolean fails = bad >= 0 && bad < segments;
+        byte[] expected = run(new String[0], config, input, fails);
+        assertTrue(expected.length > 0);
+        assertArrayEquals(expected,
+                          run(new String[] { "--nio" }, config, input, fails));
+        for (String threads : new String[] { "1", "2", "5" }) {
+            String option = "--parallel=" + threads;
+            assertArrayEquals(option, expected,
+                              run(new String[] { option }, config, input,
+                                  fails));
+            assertArrayEquals(option + " --nio", expected,
+                              run(new String[] { option, "--nio" },
+                                  config, input, fails));
+        }
+    }
+
+    @Test
+    public void testMatchesSequential() throws IOException {
+        check(100, -1);
+    }
+
+    @Test
+    public void testFailingSegment() throws IOException {
+        check(100, 60);
+    }
+
+}
@@ -1,6 +1,5 @@
 package enigma;
 
-import java.util.ArrayList;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -18,7 +17,6 @@ class Permutation {
      *  Whitespace is ignored. */
     Permutation(String cycles, Alphabet alphabet) {
         _alphabet = alphabet;
-        _cycles = new ArrayList<>();
         Pattern p = Pattern.compile("\\s*(\\([^\\s]+\\)\\s*)*\\s*");
         Matcher mat = p.matcher(cycles);
         if (!mat.matches()) {
@@ -28,6 +26,12 @@ class Permutation {
         cycles = cycles.replaceAll("\\s+", "");
         cycles = cycles.replaceAll("\\(", "");
         checkCycles(cycles.replaceAll("\\)", ""));
+        _forward = new int[size()];
+        _inverse = new int[size()];
+        for (int i = 0; i < _forward.length; i += 1) {
+            _forward[i] = i;
+            _inverse[i] = i;
+        }
         String[] cycleArray = cycles.split("\\)");
         for (int i = 0; i < cycleArray.length; i += 1) {
             if (!cycleArray[i].equals("")) {
@@ -36,18 +40,43 @@ class Permutation {
         }
     }
 
+    /** A permutation of ALPHABET that maps each I to FORWARD[I], and whose
+     *  inverse maps each I to INVERSE[I].  The arrays are used directly,
+     *  and must not be modified afterwards. */
+    Permutation(int[] forward, int[] inverse, Alphabet alphabet) {
+        _alphabet = alphabet;
+        if (forward.length != size() || inverse.length != size()) {
+            throw new enigma.EnigmaException("Bad permutation size");
+        }
+        for (int i = 0; i < forward.length; i += 1) {
+            int to = forward[i];
+            if (to < 0 || to >= size() || inverse[to] != i) {
+                throw new enigma.EnigmaException("Bad permutation table");
+            }
+        }
+        _forward = forward;
+        _inverse = inverse;
+    }
+
     /** Add the cycle c0->c1->...->cm->c0 to the permutation, where CYCLE is
      *  c0c1...cm. */
     private void addCycle(String cycle) {
-        cycle = cycle + cycle.charAt(0);
-        _cycles.add(cycle);
+        for (int i = 0; i < cycle.length(); i += 1) {
+            int from = _alphabet.toInt(cycle.charAt(i));
+            int to = _alphabet.toInt(cycle.charAt((i + 1) % cycle.length()));
+            _forward[from] = to;
+            _inverse[to] = from;
+        }
     }
 
     /** Return the value of P modulo the size of this permutation. */
     final int wrap(int p) {
-        int r = p % size();
+        if (p >= 0 && p < _forward.length) {
+            return p;
+        }
+        int r = p % _forward.length;
         if (r < 0) {
-            r += size();
+            r += _forward.length;
         }
         return r;
     }
@@ -60,26 +89,20 @@ class Permutation {
     /** Return the result of applying this permutation to P modulo the
      *  alphabet size. */
     int permute(int p) {
-        return _alphabet.toInt(permute(_alphabet.toChar(wrap(p))));
+        return _forward[wrap(p)];
     }
 
     /** Return the result of applying the inverse of this permutation
      *  to  C modulo the alphabet size. */
     int invert(int c) {
-        return  _alphabet.toInt(invert(_alphabet.toChar(wrap(c))));
+        return _inverse[wrap(c)];
     }
 
     /** Return the result of applying this permutation to the index of P
      *  in ALPHABET, and converting the result to a character of ALPHABET. */
     char permute(char p) {
         if (_alphabet.contains(p)) {
-            for (String cycle: _cycles) {
-                int index = cycle.indexOf(p);
-                if (index >= 0) {
-                    return cycle.charAt(index + 1);
-                }
-            }
-            return p;
+            return _alphabet.toChar(_forward[_alphabet.toInt(p)]);
         } else {
             throw new enigma.EnigmaException(p + " not in alphabet");
         }
@@ -88,18 +111,48 @@ class Permutation {
     /** Return the result of applying the inverse of this permutation to C. */
     char invert(char c) {
         if (_alphabet.contains(c)) {
-            for (String cycle: _cycles) {
-                int index = cycle.lastIndexOf(c);
-                if (index >= 0) {
-                    return cycle.charAt(index - 1);
-                }
-            }
-            return c;
+            return _alphabet.toChar(_inverse[_alphabet.toInt(c)]);
         } else {
             throw new enigma.EnigmaException(c + " not in alphabet");
         }
     }
 
+    /** Return a table T such that T[S * size() + P] is the result of
+     *  applying me to P + S and subtracting S, modulo size(), for all
+     *  0 <= S, P < size().  That is, row S describes me as seen by a
+     *  rotor in setting S.  Built on first use and shared thereafter. */
+    int[] forwardOffsets() {
+        int[] table = _forwardOffsets;
+        if (table == null) {
+            table = offsetTable(_forward);
+            _forwardOffsets = table;
+        }
+        return table;
+    }
+
+    /** Return the table corresponding to forwardOffsets() for my
+     *  inverse. */
+    int[] inverseOffsets() {
+        int[] table = _inverseOffsets;
+        if (table == null) {
+            table = offsetTable(_inverse);
+            _inverseOffsets = table;
+        }
+        return table;
+    }
+
+    /** Return the offset table (see forwardOffsets) for MAPPING. */
+    private int[] offsetTable(int[] mapping) {
+        int n = mapping.length;
+        int[] table = new int[n * n];
+        for (int s = 0; s < n; s += 1) {
+            for (int p = 0; p < n; p += 1) {
+                table[s * n + p] = wrap(mapping[wrap(p + s)] - s);
+            }
+        }
+        return table;
+    }
+
     /** Return the alphabet used to initialize this Permutation. */
     Alphabet alphabet() {
         return _alphabet;
@@ -108,8 +161,8 @@ class Permutation {
     /** Return true iff this permutation is a derangement (i.e., a
      *  permutation for which no value maps to itself). */
     boolean derangement() {
-        for (int i = 0; i < _alphabet.size(); i += 1) {
-            if (i == permute(i)) {
+        for (int i = 0; i < _forward.length; i += 1) {
+            if (i == _forward[i]) {
                 return false;
             }
         }
@@ -135,7 +188,16 @@ class Permutation {
     /** Alphabet of this permutation. */
     private Alphabet _alphabet;
 
-    /** List of cycles of this permutation. */
-    private ArrayList<String> _cycles;
+    /** Maps each index of my alphabet to its image under me. */
+    private int[] _forward;
+
+    /** Maps each index of my alphabet to its image under my inverse. */
+    private int[] _inverse;
+
+    /** Cached result of forwardOffsets(), or null if not yet built. */
+    private volatile int[] _forwardOffsets;
+
+    /** Cached result of inverseOffsets(), or null if not yet built. */
+    private volatile int[] _inverseOffsets;
 
 }
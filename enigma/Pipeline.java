@@ -0,0 +1,329 @@
+package enigma;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/** Processes input as Main.processLines does, but in three stages on
+ *  three threads, so that reading, converting and writing overlap: a
+ *  reader, which splits the input into lines and copies them into
+ *  blocks; a cipher, which applies the settings lines and converts the
+ *  message lines of each block in place; and a writer, which writes the
+ *  converted messages in groups of five.  The stages pass blocks along
+ *  bounded single-producer, single-consumer rings, and the writer
+ *  returns each block it has written to the reader for reuse, so that
+ *  a fixed number of blocks is ever allocated.  A stage that finds its
+ *  outgoing ring full waits, so the reader runs at most BLOCKS blocks
+ *  ahead of the writer.  Output, including that written before an
+ *  error, is the same as that of processLines.
+ *  @author Edan Bash
+ */
+final class Pipeline {
+
+    /** A pipeline that sets up and converts with MACHINE through MAIN,
+     *  reading lines from LINES and writing them with MAIN.writeLine. */
+    Pipeline(Main main, Machine machine, LineReader lines) {
+        _main = main;
+        _machine = machine;
+        _lines = lines;
+        _toCipher = new Ring<>(BLOCKS);
+        _toWriter = new Ring<>(BLOCKS);
+        _free = new Ring<>(BLOCKS);
+        for (int i = 0; i < BLOCKS; i += 1) {
+            _free.put(new Block());
+        }
+    }
+
+    /** Run the reader and cipher on threads from POOL and the writer on
+     *  the current thread, until the input is exhausted or a stage
+     *  fails.  In the latter case, throws the stage's error after
+     *  writing the messages that precede it. */
+    void run(ExecutorService pool) {
+        try {
+            pool.execute(this::read);
+            pool.execute(this::cipher);
+            write();
+        } finally {
+            _toCipher.close();
+            _toWriter.close();
+            _free.close();
+        }
+    }
+
+    /** The reader: fill free blocks with lines and pass them to the
+     *  cipher, the last marked as such. */
+    private void read() {
+        Block block = null;
+        try {
+            boolean pending = _lines.next();
+            if (!pending || !_lines.isSettings()) {
+                throw new enigma.EnigmaException("Bad config file");
+            }
+            boolean more = true;
+            while (more) {
+                block = _free.take();
+                if (block == null) {
+                    return;
+                }
+                block.clear();
+                while (block.lines < BLOCK_LINES) {
+                    if (!pending && !_lines.next()) {
+                        more = false;
+                        break;
+                    }
+                    pending = true;
+                    int len = _lines.end() - _lines.start();
+                    if (block.lines > 0
+                        && block.length + len > block.chars.length) {
+                        break;
+                    }
+                    block.add(_lines.buffer(), _lines.start(), len,
+                              _lines.isSettings());
+                    pending = false;
+                }
+                block.last = !more;
+                Block full = block;
+                block = null;
+                if (!_toCipher.put(full)) {
+                    return;
+                }
+            }
+        } catch (RuntimeException | Error excp) {
+            if (block == null) {
+                block = new Block();
+            }
+            block.error = excp;
+            block.last = true;
+            _toCipher.put(block);
+        }
+    }
+
+    /** The cipher: apply the settings lines and convert the message
+     *  lines of each block from the reader in place, and pass it to the
+     *  writer.  A block in which a line fails keeps only the lines before
+     *  it, and carries the error in place of any error from the
+     *  reader, which would come later in the input. */
+    private void cipher() {
+        while (true) {
+            Block block = _toCipher.take();
+            if (block == null) {
+                return;
+            }
+            int k = 0;
+            try {
+                for (; k < block.lines; k += 1) {
+                    int start = block.starts[k];
+                    int len = block.ends[k] - start;
+                    if (block.settings[k]) {
+                        _main.setUp(_machine,
+                                    new String(block.chars, start, len));
+                    } else {
+                        int n = _main.convert(_machine, block.chars, start,
+                                              len, block.chars, start);
+                        block.ends[k] = start + n;
+                    }
+                }
+            } catch (RuntimeException | Error excp) {
+                block.lines = k;
+                block.error = excp;
+                block.last = true;
+            }
+            boolean last = block.last;
+            if (!_toWriter.put(block) || last) {
+                return;
+            }
+        }
+    }
+
+    /** The writer: write the messages of each block from the cipher,
+     *  then return it to the reader, until the last block. */
+    private void write() {
+        while (true) {
+            Block block = _toWriter.take();
+            for (int k = 0; k < block.lines; k += 1) {
+                if (!block.settings[k]) {
+                    _main.writeLine(block.chars, block.starts[k],
+                                    block.ends[k] - block.starts[k]);
+                }
+            }
+            if (block.error instanceof RuntimeException) {
+                throw (RuntimeException) block.error;
+            } else if (block.error != null) {
+                throw (Error) block.error;
+            }
+            if (block.last) {
+                return;
+            }
+            _free.put(block);
+        }
+    }
+
+    /** A run of consecutive input lines, stored one after another in a
+     *  character array. */
+    private static final class Block {
+
+        /** Empty me. */
+        void clear() {
+            lines = length = 0;
+            last = false;
+            error = null;
+        }
+
+        /** Append the LEN characters of SRC starting at OFF as a line,
+         *  which is a settings line iff ISSETTINGS, growing chars if
+         *  needed. */
+        void add(char[] src, int off, int len, boolean isSettings) {
+            if (length + len > chars.length) {
+                char[] bigger = new char[Math.max(length + len,
+                                                  2 * chars.length)];
+                System.arraycopy(chars, 0, bigger, 0, length);
+                chars = bigger;
+            }
+            System.arraycopy(src, off, chars, length, len);
+            starts[lines] = length;
+            ends[lines] = length + len;
+            settings[lines] = isSettings;
+            lines += 1;
+            length += len;
+        }
+
+        /** The characters of my lines. */
+        private char[] chars = new char[BLOCK_CHARS];
+
+        /** Bounds in chars of each of my lines. */
+        private final int[] starts = new int[BLOCK_LINES],
+            ends = new int[BLOCK_LINES];
+
+        /** Whether each of my lines is a settings line. */
+        private final boolean[] settings = new boolean[BLOCK_LINES];
+
+        /** Number of lines, and of characters in chars, that I hold. */
+        private int lines, length;
+
+        /** True iff I hold the last lines of the input. */
+        private boolean last;
+
+        /** The error that ended processing after my lines, if any. */
+        private Throwable error;
+    }
+
+    /** A bounded queue with one producing thread and one consuming
+     *  thread, which exchange items without locks.  A producer that finds
+     *  me full, or a consumer that finds me empty, spins briefly and then
+     *  parks until the other side unparks it. */
+    private static final class Ring<T> {
+
+        /** An empty ring holding up to CAPACITY items, a power of 2. */
+        Ring(int capacity) {
+            _items = new Object[capacity];
+            _mask = capacity - 1;
+        }
+
+        /** Append ITEM, waiting while I am full.  Returns false, without
+         *  appending, if I am closed. */
+        boolean put(T item) {
+            long tail = _tail.get();
+            int spins = 0;
+            while (tail - _head.get() == _items.length) {
+                if (_closed) {
+                    return false;
+                }
+                if (spins < SPINS) {
+                    spins += 1;
+                    Thread.onSpinWait();
+                } else {
+                    _producer = Thread.currentThread();
+                    if (tail - _head.get() == _items.length && !_closed) {
+                        LockSupport.parkNanos(this, PARK_NANOS);
+                    }
+                    _producer = null;
+                }
+            }
+            _items[(int) tail & _mask] = item;
+            _tail.set(tail + 1);
+            LockSupport.unpark(_consumer);
+            return true;
+        }
+
+        /** Remove and return my first item, waiting while I am empty.
+         *  Returns null if I am closed. */
+        @SuppressWarnings("unchecked")
+        T take() {
+            long head = _head.get();
+            int spins = 0;
+            while (head == _tail.get()) {
+                if (_closed) {
+                    return null;
+                }
+                if (spins < SPINS) {
+                    spins += 1;
+                    Thread.onSpinWait();
+                } else {
+                    _consumer = Thread.currentThread();
+                    if (head == _tail.get() && !_closed) {
+                        LockSupport.parkNanos(this, PARK_NANOS);
+                    }
+                    _consumer = null;
+                }
+            }
+            int i = (int) head & _mask;
+            T result = (T) _items[i];
+            _items[i] = null;
+            _head.set(head + 1);
+            LockSupport.unpark(_producer);
+            return result;
+        }
+
+        /** Make all further and waiting calls of put and take fail. */
+        void close() {
+            _closed = true;
+            LockSupport.unpark(_producer);
+            LockSupport.unpark(_consumer);
+        }
+
+        /** Items, at indices _head through _tail - 1, modulo their
+         *  number. */
+        private final Object[] _items;
+
+        /** _items.length - 1. */
+        private final int _mask;
+
+        /** Numbers of items ever taken and ever put. */
+        private final AtomicLong _head = new AtomicLong(),
+            _tail = new AtomicLong();
+
+        /** The producer or consumer, while parked waiting for room or
+         *  for an item. */
+        private volatile Thread _producer, _consumer;
+
+        /** True once I have been closed. */
+        private volatile boolean _closed;
+    }
+
+    /** Number of blocks in the pipeline (a power of 2). */
+    private static final int BLOCKS = 8;
+
+    /** Initial number of characters, and greatest number of lines, in a
+     *  block. */
+    private static final int BLOCK_CHARS = 1 << 16, BLOCK_LINES = 1 << 10;
+
+    /** Number of times a stage spins before parking. */
+    private static final int SPINS = 64;
+
+    /** Longest time that a stage parks before looking again. */
+    private static final long PARK_NANOS = 1_000_000;
+
+    /** Sets up and converts for the cipher and writes for the writer. */
+    private final Main _main;
+
+    /** The machine used by the cipher. */
+    private final Machine _machine;
+
+    /** Source of input for the reader. */
+    private final LineReader _lines;
+
+    /** Blocks from the reader to the cipher, from the cipher to the
+     *  writer, and from the writer back to the reader. */
+    private final Ring<Block> _toCipher, _toWriter, _free;
+
+}
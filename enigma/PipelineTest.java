@@ -0,0 +1,72 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+/** The suite of all JUnit tests for the Pipeline class.
+ *  @author Edan Bash
+ */
+public class PipelineTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(60);
+
+    /** Return a new temporary file, deleted on exit. */
+    private File temp(String suffix) throws IOException {
+        File file = File.createTempFile("pipeline", suffix);
+        file.deleteOnExit();
+        return file;
+    }
+
+    @Test
+    public void testMatchesNio() throws IOException {
+        File config = temp(".conf");
+        Files.write(config.toPath(), Arrays.asList(
+            "ABCDEFGHIJKLMNOPQRSTUVWXYZ",
+            " 4 3",
+            " I MQ      (AELTPHQXRU) (BKNW) (CMOY) (DFG) (IV) (JZ) (S)",
+            " II ME     (FIXVYOMW) (CDQJ) (EUSH) (BL) (ZAR) (GT) (KN) (P)",
+            " III MV    (ABDHPEJT) (CFLVMZOYQIRWUKXSG) (N)",
+            " B R       (AE) (BN) (CK) (DQ) (FU) (GY) (HW) (IJ) (LO) (MP) "
+            + "(RX) (SZ) (TV)"));
+        Random random = new Random(42);
+        ArrayList<String> lines = new ArrayList<>();
+        for (int s = 0; s < 50; s += 1) {
+            lines.add("* B I II III " + (char) ('A' + random.nextInt(26))
+                      + "XL (AQ) (" + (char) ('C' + random.nextInt(14))
+                      + "Z)");
+            int messages = random.nextInt(100);
+            for (int k = 0; k < messages; k += 1) {
+                int len = s == 25 && k == 0 ? 200000 : random.nextInt(80);
+                StringBuilder msg = new StringBuilder();
+                for (int i = 0; i < len; i += 1) {
+                    msg.append(random.nextInt(8) == 0 ? ' '
+                               : (char) ('A' + random.nextInt(26)));
+                }
+                lines.add(msg.toString());
+            }
+        }
+        File input = temp(".in");
+        Files.write(input.toPath(), lines);
+        File expected = temp(".out");
+        File output = temp(".out");
+        Main.main("--nio", config.getPath(), input.getPath(),
+                  expected.getPath());
+        Main.main("--pipeline", config.getPath(), input.getPath(),
+                  output.getPath());
+        assertTrue(expected.length() > 200000);
+        assertArrayEquals(Files.readAllBytes(expected.toPath()),
+                          Files.readAllBytes(output.toPath()));
+    }
+
+}
@@ -0,0 +1,498 @@
+package enigma;
+
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import static enigma.EnigmaException.*;
+
+/** A ciphertext-only search for the plugboard of a machine whose rotors
+ *  and their positions are known, by hill climbing on the n-gram fitness
+ *  of the decryption.  Starting from a random plugboard, the climb
+ *  tries connecting or disconnecting each pair of characters in turn,
+ *  keeping any change that improves the fitness, until no change does.
+ *  Climbs from several random starts run in parallel, and the best
+ *  result is kept.
+ *
+ *  The scrambler (the machine without its plugboard) at each position
+ *  of the message is tabulated once.  Since a change of plugboard
+ *  involves at most four characters, it affects only the positions at
+ *  which one of them is enciphered or emerges from the scrambler, and
+ *  only the n-grams covering those positions are rescored.
+ *  @author Edan Bash
+ */
+final class PlugboardSolver {
+
+    /** Run the search as specified by ARGS and print the settings line,
+     *  in the format accepted by Main, with the best plugboard found,
+     *  followed by the decrypted message.  ARGS may begin with the
+     *  options
+     *    --ngram=N       score by N-grams (by default, 4), if the model is
+     *                    trained from a corpus;
+     *    --restarts=N    climb from N random starts (by default, 32);
+     *    --seed=S        seed the random starts with S;
+     *    --parallel=N    search on N threads (by default, one per
+     *                    processor);
+     *  followed by the name of a configuration file, the name of a
+     *  model compiled by NGrams.compile or of a file containing a
+     *  corpus from which to train one, a settings line (whose plugboard, if
+     *  any, is ignored) and the name of a file containing the
+     *  ciphertext.  Whitespace in the ciphertext is ignored. */
+    static void run(String[] args) {
+        int n = NGrams.DEFAULT_N;
+        int restarts = DEFAULT_RESTARTS;
+        long seed = System.nanoTime();
+        int threads = Runtime.getRuntime().availableProcessors();
+        int first = 0;
+        for (; first < args.length && args[first].startsWith("--");
+             first += 1) {
+            String option = args[first];
+            if (option.startsWith("--ngram=")) {
+                n = number(option, option.substring(8));
+            } else if (option.startsWith("--restarts=")) {
+                restarts = number(option, option.substring(11));
+            } else if (option.startsWith("--seed=")) {
+                try {
+                    seed = Long.parseLong(option.substring(7));
+                } catch (NumberFormatException excp) {
+                    throw error("bad number in %s", option);
+                }
+            } else if (option.startsWith("--parallel=")) {
+                threads = number(option, option.substring(11));
+            } else {
+                throw error("unknown option %s", option);
+            }
+        }
+        if (args.length - first != 4) {
+            throw error("usage: plugboard [--ngram=N] [--restarts=N] "
+                        + "[--seed=S] [--parallel=N] CONFIG MODEL|CORPUS "
+                        + "SETTINGS CIPHERTEXT");
+        }
+        Main main = new Main(args[first]);
+        Machine machine = main.readConfig();
+        main.setUp(machine, args[first + 2]);
+        NGrams model;
+        try {
+            Path file = Paths.get(args[first + 1]);
+            if (NGrams.isModel(file)) {
+                model = NGrams.read(file);
+            } else {
+                model = new NGrams(machine.alphabet(), n,
+                                   NGrams.readText(args[first + 1]));
+            }
+        } catch (InvalidPathException excp) {
+            throw error("could not open %s", args[first + 1]);
+        }
+        PlugboardSolver solver =
+            new PlugboardSolver(machine, NGrams.readText(args[first + 3]),
+                                model);
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            Solution best = solver.solve(pool, restarts, seed);
+            String[] setting = args[first + 2].trim().split(" +");
+            int end = Math.min(setting.length, machine.numRotors() + 2);
+            if (end < setting.length && !setting[end].startsWith("(")) {
+                end += 1;
+            }
+            String line = String.join(" ", Arrays.copyOf(setting, end))
+                + " " + best.cycles();
+            System.out.println(line.trim());
+            System.out.println(best.plaintext());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /** Return the positive integer VALUE, which is part of OPTION. */
+    private static int number(String option, String value) {
+        try {
+            int result = Integer.parseInt(value);
+            if (result > 0) {
+                return result;
+            }
+        } catch (NumberFormatException excp) {
+            /* Fall through. */
+        }
+        throw error("bad number in %s", option);
+    }
+
+    /** A search for the plugboard of MACHINE, whose rotors are inserted
+     *  and set to the start of CIPHERTEXT, scoring by MODEL.  MACHINE's
+     *  plugboard is ignored, and MACHINE itself is not changed.
+     *  Whitespace in CIPHERTEXT is ignored. */
+    PlugboardSolver(Machine machine, String ciphertext, NGrams model) {
+        _alphabet = machine.alphabet();
+        _size = _alphabet.size();
+        _model = model;
+        if (!model.alphabet().getChars().equals(_alphabet.getChars())) {
+            throw error("n-gram model is for a different alphabet");
+        }
+        int[] text = new int[ciphertext.length()];
+        int length = 0;
+        for (int i = 0; i < ciphertext.length(); i += 1) {
+            char c = ciphertext.charAt(i);
+            int index = _alphabet.toInt(c);
+            if (index >= 0) {
+                text[length] = index;
+                length += 1;
+            } else if (!Character.isWhitespace(c)) {
+                throw new enigma.EnigmaException(c + " not in alphabet");
+            }
+        }
+        if (length < model.n()) {
+            throw error("ciphertext too short");
+        }
+        _length = length;
+        _cipher = Arrays.copyOf(text, length);
+        _scrambler = new int[length * _size];
+        _byCipher = new int[_size][];
+        int[] counts = new int[_size];
+        for (int c : _cipher) {
+            counts[c] += 1;
+        }
+        for (int c = 0; c < _size; c += 1) {
+            _byCipher[c] = new int[counts[c]];
+            counts[c] = 0;
+        }
+        Machine scrambler = machine.copy();
+        scrambler.setPlugboard(new Permutation("", _alphabet));
+        for (int i = 0; i < length; i += 1) {
+            scrambler.advanceRotors();
+            for (int c = 0; c < _size; c += 1) {
+                _scrambler[i * _size + c] = scrambler.translate(c);
+            }
+            int c = _cipher[i];
+            _byCipher[c][counts[c]] = i;
+            counts[c] += 1;
+        }
+    }
+
+    /** A plugboard found by the search, with its decryption. */
+    final class Solution {
+
+        /** A solution with plugboard PLUG, indexed by character, giving
+         *  PLAINTEXT with fitness SCORE. */
+        Solution(int[] plug, int[] plaintext, double score) {
+            _plug = plug;
+            _plaintext = plaintext;
+            _score = score;
+        }
+
+        /** Return my plugboard. */
+        Permutation plugboard() {
+            return new Permutation(cycles(), _alphabet);
+        }
+
+        /** Return my plugboard as cycles, as in a settings line. */
+        String cycles() {
+            StringBuilder result = new StringBuilder();
+            for (int c = 0; c < _size; c += 1) {
+                if (_plug[c] > c) {
+                    result.append('(').append(_alphabet.toChar(c))
+                        .append(_alphabet.toChar(_plug[c])).append(')');
+                }
+            }
+            return result.toString();
+        }
+
+        /** Return the decryption of the ciphertext with my plugboard. */
+        String plaintext() {
+            char[] result = new char[_plaintext.length];
+            for (int i = 0; i < result.length; i += 1) {
+                result[i] = _alphabet.toChar(_plaintext[i]);
+            }
+            return new String(result);
+        }
+
+        /** Return the fitness of plaintext(). */
+        double score() {
+            return _score;
+        }
+
+        /** Plugboard, indexed by character. */
+        private final int[] _plug;
+
+        /** Decryption, as indices in the alphabet. */
+        private final int[] _plaintext;
+
+        /** Fitness of _plaintext. */
+        private final double _score;
+    }
+
+    /** Return the best solution found by RESTARTS climbs from random
+     *  plugboards chosen using SEED, run on POOL. */
+    Solution solve(ForkJoinPool pool, int restarts, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        ArrayList<Callable<Solution>> tasks = new ArrayList<>();
+        for (int k = 0; k < restarts; k += 1) {
+            SplittableRandom split = random.split();
+            tasks.add(() -> new Climb(split).climb());
+        }
+        Solution best = null;
+        try {
+            for (Future<Solution> solution : pool.invokeAll(tasks)) {
+                if (best == null || solution.get().score() > best.score()) {
+                    best = solution.get();
+                }
+            }
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw error("interrupted");
+        } catch (ExecutionException excp) {
+            if (excp.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) excp.getCause();
+            }
+            throw new Error(excp.getCause());
+        }
+        return best;
+    }
+
+    /** Return the best solution found by one climb from a random
+     *  plugboard chosen using RANDOM. */
+    Solution solve(SplittableRandom random) {
+        return new Climb(random).climb();
+    }
+
+    /** One climb, with its current plugboard and decryption. */
+    private final class Climb {
+
+        /** A climb from a random plugboard chosen using RANDOM. */
+        Climb(SplittableRandom random) {
+            _plug = new int[_size];
+            for (int c = 0; c < _size; c += 1) {
+                _plug[c] = c;
+            }
+            int pairs = random.nextInt(_size / START_PAIRS_DIVISOR + 1);
+            for (int k = 0; k < pairs; k += 1) {
+                int a = random.nextInt(_size), b = random.nextInt(_size);
+                if (a != b && _plug[a] == a && _plug[b] == b) {
+                    _plug[a] = b;
+                    _plug[b] = a;
+                }
+            }
+            _out = new int[_length];
+            _plain = new int[_length];
+            _byOut = new int[_size][];
+            _byOutCount = new int[_size];
+            _stamps = new int[_length];
+            _positions = new int[_length];
+            _saved = new int[2 * _length];
+            for (int i = 0; i < _length; i += 1) {
+                _out[i] = _scrambler[i * _size + _plug[_cipher[i]]];
+                _plain[i] = _plug[_out[i]];
+            }
+            indexOutputs();
+            _score = _model.score(_plain);
+        }
+
+        /** Climb until no change of plugboard improves the fitness, and
+         *  return the result. */
+        Solution climb() {
+            boolean improved;
+            do {
+                improved = false;
+                for (int a = 0; a < _size; a += 1) {
+                    for (int b = a + 1; b < _size; b += 1) {
+                        if (tryPair(a, b)) {
+                            improved = true;
+                        }
+                    }
+                }
+            } while (improved);
+            return new Solution(_plug.clone(), _plain.clone(), _score);
+        }
+
+        /** Disconnect A and B if they are connected, and otherwise
+         *  connect them, disconnecting each from any other character.
+         *  Keep the change and return true iff it improves the fitness;
+         *  otherwise undo it. */
+        private boolean tryPair(int a, int b) {
+            int pa = _plug[a], pb = _plug[b];
+            _changed[0] = a;
+            _changed[1] = b;
+            _changed[2] = pa;
+            _changed[3] = pb;
+            if (pa == b) {
+                _plug[a] = a;
+                _plug[b] = b;
+            } else {
+                _plug[pa] = pa;
+                _plug[pb] = pb;
+                _plug[a] = b;
+                _plug[b] = a;
+            }
+            int count = affected();
+            double delta = rescore(count);
+            if (delta > 0) {
+                _score += delta;
+                indexOutputs();
+                return true;
+            }
+            for (int k = 0; k < count; k += 1) {
+                _plain[_positions[k]] = _saved[k];
+            }
+            _plug[a] = pa;
+            _plug[b] = pb;
+            _plug[pa] = a;
+            _plug[pb] = b;
+            return false;
+        }
+
+        /** Collect in _positions the positions whose decryption may be
+         *  changed by a change of plugboard involving only the characters
+         *  in _changed, and return their number. */
+        private int affected() {
+            _stamp += 1;
+            int count = 0;
+            for (int c : _changed) {
+                for (int i : _byCipher[c]) {
+                    if (_stamps[i] != _stamp) {
+                        _stamps[i] = _stamp;
+                        _positions[count] = i;
+                        count += 1;
+                    }
+                }
+                int[] out = _byOut[c];
+                for (int k = 0; k < _byOutCount[c]; k += 1) {
+                    int i = out[k];
+                    if (_stamps[i] != _stamp) {
+                        _stamps[i] = _stamp;
+                        _positions[count] = i;
+                        count += 1;
+                    }
+                }
+            }
+            return count;
+        }
+
+        /** Decrypt the first COUNT positions in _positions with the
+         *  current plugboard, saving their previous decryptions in _saved,
+         *  and return the resulting change in fitness. */
+        private double rescore(int count) {
+            int n = _model.n();
+            int last = _length - n;
+            _stamp += 1;
+            int windows = 0;
+            for (int k = 0; k < count; k += 1) {
+                int i = _positions[k];
+                for (int j = Math.max(0, i - n + 1); j <= i && j <= last;
+                     j += 1) {
+                    if (_stamps[j] != _stamp) {
+                        _stamps[j] = _stamp;
+                        _saved[count + windows] = j;
+                        windows += 1;
+                    }
+                }
+            }
+            double before = 0;
+            for (int w = 0; w < windows; w += 1) {
+                before += _model.score(_plain, _saved[count + w]);
+            }
+            for (int k = 0; k < count; k += 1) {
+                int i = _positions[k];
+                _saved[k] = _plain[i];
+                _plain[i] =
+                    _plug[_scrambler[i * _size + _plug[_cipher[i]]]];
+            }
+            double after = 0;
+            for (int w = 0; w < windows; w += 1) {
+                after += _model.score(_plain, _saved[count + w]);
+            }
+            return after - before;
+        }
+
+        /** Recompute _out for the current plugboard, and index it by
+         *  character in _byOut. */
+        private void indexOutputs() {
+            Arrays.fill(_byOutCount, 0);
+            for (int i = 0; i < _length; i += 1) {
+                int c = _scrambler[i * _size + _plug[_cipher[i]]];
+                _out[i] = c;
+                _byOutCount[c] += 1;
+            }
+            for (int c = 0; c < _size; c += 1) {
+                if (_byOut[c] == null || _byOut[c].length < _byOutCount[c]) {
+                    _byOut[c] = new int[_byOutCount[c]];
+                }
+                _byOutCount[c] = 0;
+            }
+            for (int i = 0; i < _length; i += 1) {
+                int c = _out[i];
+                _byOut[c][_byOutCount[c]] = i;
+                _byOutCount[c] += 1;
+            }
+        }
+
+        /** Current plugboard, indexed by character. */
+        private final int[] _plug;
+
+        /** Characters whose connections the change being tried alters. */
+        private final int[] _changed = new int[4];
+
+        /** Output of the scrambler at each position, under _plug. */
+        private final int[] _out;
+
+        /** Decryption under _plug. */
+        private final int[] _plain;
+
+        /** For each character, the positions (the first _byOutCount of
+         *  the array) at which it is the output of the scrambler. */
+        private final int[][] _byOut;
+
+        /** Number of positions in each element of _byOut. */
+        private final int[] _byOutCount;
+
+        /** Stamps marking positions and n-grams already collected. */
+        private final int[] _stamps;
+
+        /** Current stamp. */
+        private int _stamp;
+
+        /** Positions affected by the change being tried. */
+        private final int[] _positions;
+
+        /** Previous decryptions at _positions, followed by the starts of
+         *  the n-grams covering them. */
+        private final int[] _saved;
+
+        /** Fitness of _plain. */
+        private double _score;
+    }
+
+    /** Default number of random starts. */
+    private static final int DEFAULT_RESTARTS = 32;
+
+    /** A random start has up to alphabet size / START_PAIRS_DIVISOR
+     *  connections. */
+    private static final int START_PAIRS_DIVISOR = 4;
+
+    /** Alphabet of the machine. */
+    private final Alphabet _alphabet;
+
+    /** Size of _alphabet. */
+    private final int _size;
+
+    /** Scoring model. */
+    private final NGrams _model;
+
+    /** Number of characters of ciphertext. */
+    private final int _length;
+
+    /** Ciphertext, as indices in the alphabet. */
+    private final int[] _cipher;
+
+    /** The scrambler at each position of the message: the image of C at
+     *  position I is _scrambler[I * _size + C]. */
+    private final int[] _scrambler;
+
+    /** For each character, the positions at which it is enciphered. */
+    private final int[][] _byCipher;
+
+}
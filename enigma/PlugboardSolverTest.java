@@ -0,0 +1,164 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the PlugboardSolver and NGrams
+ *  classes.
+ *  @author Edan Bash
+ */
+public class PlugboardSolverTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(30);
+
+    /** An English corpus. */
+    private static final String CORPUS =
+        "From his shoulder Hiawatha took the camera of rosewood, made of "
+        + "sliding, folding rosewood; neatly put it all together.  In its "
+        + "case it lay compactly, folded into nearly nothing; but he "
+        + "opened out the hinges, pushed and pulled the joints and "
+        + "hinges, till it looked all squares and oblongs, like a "
+        + "complicated figure in the second book of Euclid.  This he "
+        + "perched upon a tripod, crouched beneath its dusky cover, "
+        + "stretched his hand, enforcing silence, said: Be motionless, I "
+        + "beg you!  Mystic, awful was the process.  All the family in "
+        + "order sat before him for their pictures: each in turn, as he "
+        + "was taken, volunteered his own suggestions, his ingenious "
+        + "suggestions.  First the governor, the father: he suggested "
+        + "velvet curtains looped about a massy pillar, and the corner "
+        + "of a rosewood dining table.  He would hold a scroll of "
+        + "something, hold it firmly in his left hand; he would keep "
+        + "his right hand buried, like Napoleon, in his waistcoat.";
+
+    /** A plaintext. */
+    private static final String PLAIN =
+        "THISHEPERCHEDUPONATRIPODCROUCHEDBENEATHITSDUSKYCOVERSTRETCHED"
+        + "HISHANDENFORCINGSILENCESAIDBEMOTIONLESSIBEGYOUMYSTICAWFULWAS"
+        + "THEPROCESSALLTHEFAMILYINORDERSATBEFOREHIMFORTHEIRPICTURES"
+        + "EACHINTURNASHEWASTAKENVOLUNTEEREDHISOWNSUGGESTIONS";
+
+    /** Plugboard used to encrypt PLAIN. */
+    private static final String PLUGBOARD = "(AK)(DR)(EQ)(HW)(MZ)(SU)";
+
+    /** Return a machine with rotors B, IV, II and III at setting SETTING,
+     *  and plugboard PLUGS. */
+    private Machine machine(String setting, String plugs) {
+        Machine result = navalMachine(4, 3, "B", "IV", "II", "III");
+        result.insertRotors(new String[] {"B", "IV", "II", "III"});
+        result.setRotors(setting);
+        result.setPlugboard(new Permutation(plugs, UPPER));
+        return result;
+    }
+
+    /** Return TEXT as indices in UPPER. */
+    private int[] indices(String text) {
+        int[] result = new int[text.length()];
+        for (int i = 0; i < result.length; i += 1) {
+            result[i] = UPPER.toInt(text.charAt(i));
+        }
+        return result;
+    }
+
+    @Test
+    public void testNGrams() {
+        NGrams model = new NGrams(UPPER, 3, "the, THE; thx");
+        assertEquals(3, model.n());
+        int[] text = indices("THE");
+        assertEquals(Math.log10(2.0 / 7), model.score(text, 0), 1e-6);
+        assertEquals(Math.log10(0.01 / 7), model.score(indices("QQQ"), 0),
+                     1e-6);
+        assertEquals(model.score(text, 0), model.score(text), 1e-6);
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testNGramsTooLong() {
+        new NGrams(UPPER, 7, CORPUS);
+    }
+
+    @Test
+    public void testRollingScore() {
+        NGrams model = new NGrams(UPPER, 4, CORPUS);
+        int[] text = indices(PLAIN);
+        double sum = 0;
+        for (int j = 0; j + 4 <= text.length; j += 1) {
+            sum += model.score(text, j);
+        }
+        assertEquals(sum, model.score(text), 1e-3);
+        assertEquals(0, model.score(indices("THE")), 0);
+    }
+
+    @Test
+    public void testCompiledModel() throws IOException {
+        File file = File.createTempFile("model", ".ngr");
+        file.deleteOnExit();
+        NGrams model = new NGrams(UPPER, 4, CORPUS);
+        model.write(file.toPath());
+        assertTrue(NGrams.isModel(file.toPath()));
+        NGrams loaded = NGrams.read(file.toPath());
+        assertEquals(4, loaded.n());
+        assertEquals(UPPER.getChars(), loaded.alphabet().getChars());
+        int[] text = indices(PLAIN);
+        for (int j = 0; j + 4 <= text.length; j += 1) {
+            assertEquals(model.score(text, j), loaded.score(text, j), 0);
+        }
+        assertEquals(model.score(indices("QQQQ")),
+                     loaded.score(indices("QQQQ")), 0);
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testTruncatedModel() throws IOException {
+        File file = File.createTempFile("model", ".ngr");
+        file.deleteOnExit();
+        new NGrams(UPPER, 2, CORPUS).write(file.toPath());
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        Files.write(file.toPath(), Arrays.copyOf(bytes, bytes.length / 2));
+        NGrams.read(file.toPath());
+    }
+
+    @Test
+    public void testIncrementalScore() {
+        NGrams model = new NGrams(UPPER, 3, CORPUS);
+        String cipher = machine("KDO", PLUGBOARD).convert(PLAIN);
+        PlugboardSolver solver =
+            new PlugboardSolver(machine("KDO", "(XY)"), cipher, model);
+        for (long seed = 0; seed < 4; seed += 1) {
+            PlugboardSolver.Solution solution =
+                solver.solve(new SplittableRandom(seed));
+            String plain = machine("KDO", solution.cycles()).convert(cipher);
+            assertEquals(plain, solution.plaintext());
+            assertEquals(model.score(indices(plain)), solution.score(),
+                         1e-3);
+        }
+    }
+
+    @Test
+    public void testSolve() {
+        NGrams model = new NGrams(UPPER, 3, CORPUS);
+        String cipher = machine("KDO", PLUGBOARD).convert(PLAIN);
+        PlugboardSolver solver =
+            new PlugboardSolver(machine("KDO", ""), cipher, model);
+        PlugboardSolver.Solution best;
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            best = solver.solve(pool, 16, 1);
+        } finally {
+            pool.shutdown();
+        }
+        assertEquals(PLUGBOARD, best.cycles());
+        assertEquals(PLAIN, best.plaintext());
+    }
+
+}
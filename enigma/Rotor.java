@@ -1,10 +1,14 @@
 package enigma;
 
 
-/** Superclass that represents a rotor in the enigma machine.
+/** Superclass that represents a rotor in the enigma machine.  A rotor's
+ *  wiring (its name, permutation and notches) never changes and is
+ *  shared by its copies; its setting and ring setting belong to each
+ *  copy.  The rotors of a configuration serve as patterns, which
+ *  machines copy into their slots.
  *  @author Edan Bash
  */
-class Rotor {
+class Rotor implements Cloneable {
 
     /** A rotor named NAME whose permutation is given by PERM. */
     Rotor(String name, Permutation perm) {
@@ -12,6 +16,8 @@ class Rotor {
         _permutation = perm;
         _setting = 0;
         _ringSetting = 0;
+        _tabled = (long) size() * size() <= MAX_TABLE_SIZE;
+        _pattern = this;
     }
 
     /** Return my name. */
@@ -19,6 +25,12 @@ class Rotor {
         return _name;
     }
 
+    /** Return the rotor of which I am a copy, or myself if I am not a
+     *  copy.  Rotors with the same pattern have the same wiring. */
+    Rotor pattern() {
+        return _pattern;
+    }
+
     /** Return my alphabet. */
     Alphabet alphabet() {
         return _permutation.alphabet();
@@ -57,6 +69,7 @@ class Rotor {
     /** Set setting() to POSN.  */
     void set(int posn) {
         _setting = permutation().wrap(posn);
+        _row = _setting * size();
     }
 
     /** Set setting() to character CPOSN. */
@@ -77,18 +90,41 @@ class Rotor {
     /** Return the conversion of P (an integer in the range 0..size()-1)
      *  according to my permutation. */
     int convertForward(int p) {
+        if (_tabled) {
+            int[] table = _forwardTable;
+            if (table == null) {
+                table = _permutation.forwardOffsets();
+                _forwardTable = table;
+            }
+            return table[_row + p];
+        }
         return _permutation.wrap(_permutation.permute(p + _setting) - _setting);
     }
 
     /** Return the conversion of E (an integer in the range 0..size()-1)
      *  according to the inverse of my permutation. */
     int convertBackward(int e) {
+        if (_tabled) {
+            int[] table = _inverseTable;
+            if (table == null) {
+                table = _permutation.inverseOffsets();
+                _inverseTable = table;
+            }
+            return table[_row + e];
+        }
         return _permutation.wrap(_permutation.invert(e + _setting) - _setting);
     }
 
     /** Returns true iff I am positioned to allow the rotor to my left
      *  to advance. */
     boolean atNotch() {
+        return atNotch(_setting);
+    }
+
+    /** Returns true iff I would be positioned to allow the rotor to my
+     *  left to advance if my setting were SETTING, with my current ring
+     *  setting. */
+    boolean atNotch(int setting) {
         return false;
     }
 
@@ -96,6 +132,16 @@ class Rotor {
     void advance() {
     }
 
+    /** Return a new rotor with my name, wiring, notches and current
+     *  settings, whose settings change independently of mine. */
+    Rotor copy() {
+        try {
+            return (Rotor) clone();
+        } catch (CloneNotSupportedException excp) {
+            throw new AssertionError(excp);
+        }
+    }
+
     @Override
     public String toString() {
         return "Rotor " + _name;
@@ -104,8 +150,11 @@ class Rotor {
     /** My name. */
     private final String _name;
 
+    /** The rotor of which I am a copy, or myself. */
+    private final Rotor _pattern;
+
     /** The permutation implemented by this rotor in its 0 position. */
-    private Permutation _permutation;
+    private final Permutation _permutation;
 
     /** Current setting of rotor. */
     private int _setting;
@@ -113,4 +162,21 @@ class Rotor {
     /** Current ring setting of rotor. */
     private int _ringSetting;
 
+    /** Rotors whose alphabets are small enough that SIZE * SIZE is at most
+     *  this convert through per-setting tables; larger ones compute each
+     *  conversion arithmetically. */
+    static final int MAX_TABLE_SIZE = 1 << 16;
+
+    /** True iff I convert through my permutation's offset tables. */
+    private final boolean _tabled;
+
+    /** Start of the row for my current setting in the offset tables. */
+    private int _row;
+
+    /** My permutation's forward offset table, once first needed. */
+    private int[] _forwardTable;
+
+    /** My permutation's inverse offset table, once first needed. */
+    private int[] _inverseTable;
+
 }
@@ -0,0 +1,282 @@
+package enigma;
+
+import java.util.Arrays;
+
+/** The scrambler (the rotors, without the plugboard) of a machine made
+ *  from rotors of a catalog in a given order, over a run of consecutive
+ *  positions, for searches that try many start positions.  A scrambler
+ *  keeps the settings of its rotors in an int array, which it steps as
+ *  Machine.advanceRotors steps rotors, using tabulated notches, and
+ *  evaluates the permutation at a position from those settings and the
+ *  rotors' wiring, without use of the rotors themselves.  As in
+ *  Machine, the part of the scrambler to the left of the rightmost rotor
+ *  (the inner part) is tabulated for each combination of settings of its
+ *  rotors, which changes rarely from one position, or start position, to
+ *  the next.  All rings are at their 0 setting.
+ *  @author Edan Bash
+ */
+final class Scrambler {
+
+    /** A scrambler for the rotors of CATALOG named ORDER, as for
+     *  Machine.insertRotors, over runs of LENGTH positions. */
+    Scrambler(Machine catalog, String[] order, int length) {
+        _order = order;
+        _machine = catalog.copy();
+        _machine.insertRotors(order);
+        _rotors = _machine.activeRotors();
+        _slots = _rotors.length;
+        _size = catalog.alphabet().size();
+        _length = length;
+        _forward = new int[_slots][];
+        _inverse = new int[_slots][];
+        _notches = new boolean[_slots][];
+        _rotates = new boolean[_slots];
+        _settings = new int[_slots];
+        for (int j = 0; j < _slots; j += 1) {
+            _rotates[j] = _rotors[j].rotates();
+            _notches[j] = new boolean[_size];
+            for (int c = 0; c < _size; c += 1) {
+                _notches[j][c] = _rotors[j].atNotch(c);
+            }
+            Permutation perm = _rotors[j].permutation();
+            _forward[j] = new int[_size];
+            _inverse[j] = new int[_size];
+            for (int c = 0; c < _size; c += 1) {
+                _forward[j][c] = perm.permute(c);
+                _inverse[j][c] = perm.invert(c);
+            }
+        }
+        _fastSetting = new int[length];
+        _innerRow = new int[length];
+        _innerCapacity = 2 * (length + 1);
+        _inner = new int[_innerCapacity * _size];
+        _innerKeys = new int[_innerCapacity * _slots];
+        _innerHash = new int[Integer.highestOneBit(_innerCapacity) * 4];
+    }
+
+    /** Return the names of my rotors, reflector first. */
+    String[] order() {
+        return _order;
+    }
+
+    /** Return the number of rotor slots, including the reflector's. */
+    int slots() {
+        return _slots;
+    }
+
+    /** Return the number of positions in my runs. */
+    int length() {
+        return _length;
+    }
+
+    /** Set my rotors to START, indexed by slot (START[0] is ignored),
+     *  advance them OFFSET positions and then tabulate the scrambler at
+     *  each of the next length() positions. */
+    void position(int[] start, long offset) {
+        if (offset > 0) {
+            for (int j = 1; j < _slots; j += 1) {
+                _rotors[j].set(start[j]);
+            }
+            _machine.seek(offset);
+            for (int j = 1; j < _slots; j += 1) {
+                _settings[j] = _rotors[j].setting();
+            }
+        } else {
+            System.arraycopy(start, 1, _settings, 1, _slots - 1);
+        }
+        if (_innerCount > _innerCapacity - _length) {
+            Arrays.fill(_innerHash, 0);
+            _innerCount = 0;
+        }
+        int last = _slots - 1;
+        int row = -1;
+        for (int i = 0; i < _length; i += 1) {
+            step();
+            _fastSetting[i] = _settings[last];
+            if (row < 0 || !innerMatches(row)) {
+                row = innerRow();
+            }
+            _innerRow[i] = row * _size;
+        }
+    }
+
+    /** Advance _settings by one keypress, as Machine.advanceRotors
+     *  advances its rotors. */
+    private void step() {
+        int[] settings = _settings;
+        int last = _slots - 1;
+        boolean atNotch = _notches[1][settings[1]];
+        for (int i = 1; i <= last; i += 1) {
+            boolean rightAtNotch = i < last
+                && _notches[i + 1][settings[i + 1]];
+            if (i == last
+                    || (rightAtNotch && _rotates[i])
+                    || (atNotch && _rotates[i - 1])) {
+                settings[i] += 1;
+                if (settings[i] == _size) {
+                    settings[i] = 0;
+                }
+            }
+            atNotch = rightAtNotch;
+        }
+    }
+
+    /** Return the image of C under the scrambler at position I of the
+     *  last run tabulated by position. */
+    int scramble(int i, int c) {
+        int last = _slots - 1;
+        int s = _fastSetting[i];
+        c = through(_forward[last], s, c);
+        c = _inner[_innerRow[i] + c];
+        return through(_inverse[last], s, c);
+    }
+
+    /** Advance START, indexed by slot, to the next combination of
+     *  settings of the rotors in slots FROM and after, counting as an
+     *  odometer does with the rightmost slot fastest.  Returns false,
+     *  leaving those slots at 0, if START was the last combination. */
+    boolean next(int[] start, int from) {
+        for (int j = _slots - 1; j >= from; j -= 1) {
+            start[j] += 1;
+            if (start[j] < _size) {
+                return true;
+            }
+            start[j] = 0;
+        }
+        return false;
+    }
+
+    /** Return START, indexed by slot, as a settings string for
+     *  Machine.setRotors. */
+    String setting(int[] start) {
+        char[] result = new char[_slots - 1];
+        for (int j = 1; j < _slots; j += 1) {
+            result[j - 1] = _machine.alphabet().toChar(start[j]);
+        }
+        return new String(result);
+    }
+
+    /** Return the index of the row of _inner tabulating the inner part
+     *  of the scrambler for the current settings of my rotors, filling
+     *  in a row if there is none. */
+    private int innerRow() {
+        int h = 0;
+        for (int j = 1; j < _slots - 1; j += 1) {
+            h = h * HASH_MULTIPLIER + _settings[j];
+        }
+        int mask = _innerHash.length - 1;
+        int slot = (h * HASH_MULTIPLIER) >>> 8 & mask;
+        while (_innerHash[slot] != 0) {
+            int r = _innerHash[slot] - 1;
+            if (innerMatches(r)) {
+                return r;
+            }
+            slot = (slot + 1) & mask;
+        }
+        int r = _innerCount;
+        _innerCount += 1;
+        _innerHash[slot] = r + 1;
+        for (int j = 1; j < _slots - 1; j += 1) {
+            _innerKeys[r * _slots + j] = _settings[j];
+        }
+        for (int c = 0; c < _size; c += 1) {
+            int p = c;
+            for (int j = _slots - 2; j >= 1; j -= 1) {
+                p = through(_forward[j], _settings[j], p);
+            }
+            p = _forward[0][p];
+            for (int j = 1; j < _slots - 1; j += 1) {
+                p = through(_inverse[j], _settings[j], p);
+            }
+            _inner[r * _size + c] = p;
+        }
+        return r;
+    }
+
+    /** Returns true iff row R of _inner is for the current settings of
+     *  the inner rotors. */
+    private boolean innerMatches(int r) {
+        int base = r * _slots;
+        for (int j = 1; j < _slots - 1; j += 1) {
+            if (_innerKeys[base + j] != _settings[j]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Return the result of passing C through the rotor with wiring
+     *  WIRING at setting S. */
+    private int through(int[] wiring, int s, int c) {
+        c += s;
+        if (c >= _size) {
+            c -= _size;
+        }
+        c = wiring[c] - s;
+        if (c < 0) {
+            c += _size;
+        }
+        return c;
+    }
+
+    /** Multiplier used in hashing settings. */
+    private static final int HASH_MULTIPLIER = 0x9e3779b1;
+
+    /** Names of my rotors. */
+    private final String[] _order;
+
+    /** My copy of the catalog, with my rotors inserted. */
+    private final Machine _machine;
+
+    /** The rotors in _machine's slots. */
+    private final Rotor[] _rotors;
+
+    /** Number of slots. */
+    private final int _slots;
+
+    /** Size of the alphabet. */
+    private final int _size;
+
+    /** Number of positions in a run. */
+    private final int _length;
+
+    /** Settings of the rotors in each slot at the current position. */
+    private final int[] _settings;
+
+    /** Whether the rotor in each slot is at a notch at each setting. */
+    private final boolean[][] _notches;
+
+    /** Whether the rotor in each slot rotates. */
+    private final boolean[] _rotates;
+
+    /** Forward and inverse wiring of the rotor in each slot. */
+    private final int[][] _forward, _inverse;
+
+    /** Setting of the rightmost rotor at each position of the run. */
+    private final int[] _fastSetting;
+
+    /** Index in _inner of the start of the row tabulating the inner part
+     *  of the scrambler at each position of the run. */
+    private final int[] _innerRow;
+
+    /** Rows tabulating the inner part of the scrambler, each for the
+     *  settings of the inner rotors recorded in _innerKeys. */
+    private final int[] _inner;
+
+    /** For each row of _inner, the settings of the inner rotors, indexed
+     *  by slot. */
+    private final int[] _innerKeys;
+
+    /** Open-addressed hash table of the rows of _inner, by the settings
+     *  of the inner rotors: each entry is a row index plus one, or 0 if
+     *  empty. */
+    private final int[] _innerHash;
+
+    /** Number of rows of _inner in use.  Rows are discarded only
+     *  between runs, when fewer than a run's length remain free. */
+    private int _innerCount;
+
+    /** Number of rows in _inner. */
+    private final int _innerCapacity;
+
+}
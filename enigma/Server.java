@@ -0,0 +1,403 @@
+package enigma;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static enigma.EnigmaException.*;
+
+/** A long-running encryption service.  The server reads one or more
+ *  configuration files (rotor catalogs) once, then listens on a
+ *  Unix-domain socket or a loopback TCP port.  Each connection is served
+ *  on its own thread (a virtual thread where the runtime has them) and
+ *  is a stream of lines:
+ *    @NAME   selects the catalog read from the file with base name NAME
+ *            (by default, the first catalog);
+ *    #ID     attaches the connection to the session named ID, whose
+ *            machine persists between connections (the server keeps
+ *            at most MAX_SESSIONS sessions, forgetting those least
+ *            recently attached);
+ *    * ...   a settings line, as for Main;
+ *  and any other line is a message, to which the server replies with
+ *  its conversion, in groups of five as Main prints it.  @ and #
+ *  lines are recognized only before the first settings line.  After an
+ *  error, the server replies "Error: " and the message, and closes the
+ *  connection.
+ *  @author Edan Bash
+ */
+final class Server implements AutoCloseable {
+
+    /** Run a server as specified by ARGS: ARGS[0] is a port number (to
+     *  listen on the loopback interface) or unix:PATH (to listen on a
+     *  Unix-domain socket at PATH); the remaining ARGS name
+     *  configuration files.  Does not return unless the server fails. */
+    static void serve(String[] args) {
+        if (args.length < 2) {
+            throw error("usage: serve PORT|unix:PATH CONFIG...");
+        }
+        Map<String, Catalog> catalogs = new LinkedHashMap<>();
+        for (int i = 1; i < args.length; i += 1) {
+            String name = Paths.get(args[i]).getFileName().toString();
+            int dot = name.lastIndexOf('.');
+            if (dot > 0) {
+                name = name.substring(0, dot);
+            }
+            catalogs.put(name, new Catalog(args[i]));
+        }
+        try (Server server = new Server(address(args[0]), catalogs)) {
+            server.run();
+        }
+    }
+
+    /** Return the address described by SPEC, as for serve. */
+    private static SocketAddress address(String spec) {
+        if (spec.startsWith("unix:")) {
+            return UnixDomainSocketAddress.of(spec.substring(5));
+        }
+        try {
+            return new InetSocketAddress(InetAddress.getLoopbackAddress(),
+                                         Integer.parseInt(spec));
+        } catch (IllegalArgumentException excp) {
+            throw error("bad server address: %s", spec);
+        }
+    }
+
+    /** A server listening at ADDRESS and serving CATALOGS, the first of
+     *  which is the default. */
+    Server(SocketAddress address, Map<String, Catalog> catalogs) {
+        if (catalogs.isEmpty()) {
+            throw error("no catalogs to serve");
+        }
+        _catalogs = catalogs;
+        _default = catalogs.values().iterator().next();
+        _sessions = new ConcurrentHashMap<>();
+        _stripes = new ReentrantLock[STRIPES];
+        for (int i = 0; i < STRIPES; i += 1) {
+            _stripes[i] = new ReentrantLock();
+        }
+        try {
+            if (address instanceof UnixDomainSocketAddress) {
+                _socketFile = ((UnixDomainSocketAddress) address).getPath();
+                if (Files.exists(_socketFile, LinkOption.NOFOLLOW_LINKS)) {
+                    if (!isSocket(_socketFile)) {
+                        throw error("%s exists and is not a socket",
+                                    _socketFile);
+                    }
+                    Files.delete(_socketFile);
+                }
+                _listener =
+                    ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+            } else {
+                _listener = ServerSocketChannel.open();
+            }
+            _listener.bind(address);
+        } catch (IOException excp) {
+            throw error("could not listen at %s", address);
+        }
+        _workers = Main.threadPerTaskExecutor();
+    }
+
+    /** Returns true iff FILE, which exists, is a socket.  Where the
+     *  file system does not report file types, assumes that any file
+     *  that is not a regular file, directory or symbolic link is. */
+    private static boolean isSocket(Path file) throws IOException {
+        try {
+            int mode = (Integer) Files.getAttribute(file, "unix:mode",
+                                                    LinkOption.NOFOLLOW_LINKS);
+            return (mode & S_IFMT) == S_IFSOCK;
+        } catch (UnsupportedOperationException | IllegalArgumentException e) {
+            return Files.readAttributes(file, BasicFileAttributes.class,
+                                        LinkOption.NOFOLLOW_LINKS).isOther();
+        }
+    }
+
+    /** Return the address at which I am listening. */
+    SocketAddress address() {
+        try {
+            return _listener.getLocalAddress();
+        } catch (IOException excp) {
+            throw error("server closed");
+        }
+    }
+
+    /** Accept and serve connections until I am closed.  A failure to
+     *  accept a connection is reported on the standard error, and after
+     *  a pause of ACCEPT_RETRY_MILLIS, I continue accepting. */
+    void run() {
+        while (_listener.isOpen()) {
+            SocketChannel channel;
+            try {
+                channel = _listener.accept();
+            } catch (IOException excp) {
+                if (!_listener.isOpen()) {
+                    return;
+                }
+                System.err.printf("Error: could not accept connection: %s%n",
+                                  excp);
+                try {
+                    Thread.sleep(ACCEPT_RETRY_MILLIS);
+                } catch (InterruptedException interrupted) {
+                    return;
+                }
+                continue;
+            }
+            _workers.execute(() -> serve(channel));
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            _listener.close();
+            if (_socketFile != null) {
+                Files.deleteIfExists(_socketFile);
+            }
+        } catch (IOException excp) {
+            /* Ignore. */
+        }
+        _workers.shutdownNow();
+    }
+
+    /** A configuration read once and shared by all connections. */
+    static final class Catalog {
+
+        /** The catalog described by the configuration file (or image)
+         *  named CONFIG. */
+        Catalog(String config) {
+            _reader = new Main(config);
+            _template = _reader.readConfig();
+        }
+
+        /** Return a new machine from this catalog, set up according to
+         *  SETTINGS. */
+        Machine machine(String settings) {
+            Machine m = _template.copy();
+            _reader.setUp(m, settings);
+            return m;
+        }
+
+        /** Parser of the configuration, used to interpret settings. */
+        private final Main _reader;
+
+        /** The machine described by the configuration. */
+        private final Machine _template;
+    }
+
+    /** A named machine that persists between connections. */
+    private static final class Session {
+        /** The session's machine, or null if not yet set up. */
+        private Machine machine;
+        /** The number of the latest attachment to the session, or
+         *  Long.MAX_VALUE while the first is under way. */
+        private volatile long lastAttached = Long.MAX_VALUE;
+    }
+
+    /** Serve the connection CHANNEL, closing it when done. */
+    private void serve(SocketChannel channel) {
+        Charset charset = Charset.defaultCharset();
+        LineReader in = new LineReader(channel, charset, CONNECTION_BUFFER);
+        GroupWriter out = new GroupWriter(channel, charset, CONNECTION_BUFFER);
+        try {
+            Catalog catalog = _default;
+            Session session = null;
+            ReentrantLock lock = null;
+            Machine m = null;
+            char[] result = new char[0];
+            boolean started = false;
+            while (in.next()) {
+                char[] buf = in.buffer();
+                int start = in.start(), len = in.end() - start;
+                if (!started && len > 0 && buf[start] == '@') {
+                    catalog = _catalogs.get(in.line().substring(1));
+                    if (catalog == null) {
+                        throw error("no catalog %s", in.line().substring(1));
+                    }
+                } else if (!started && len > 0 && buf[start] == '#') {
+                    String id = in.line().substring(1);
+                    session = session(id);
+                    lock = stripe(id);
+                } else if (in.isSettings()) {
+                    started = true;
+                    m = catalog.machine(in.line());
+                    if (session != null) {
+                        lock.lock();
+                        try {
+                            session.machine = m;
+                        } finally {
+                            lock.unlock();
+                        }
+                    }
+                } else {
+                    started = true;
+                    if (result.length < len) {
+                        result = new char[Math.max(len, 2 * result.length)];
+                    }
+                    int n;
+                    if (session != null) {
+                        lock.lock();
+                        try {
+                            n = convert(session.machine, buf, start, len,
+                                        result);
+                        } finally {
+                            lock.unlock();
+                        }
+                    } else {
+                        n = convert(m, buf, start, len, result);
+                    }
+                    out.writeLine(result, 0, n);
+                    out.flush();
+                }
+            }
+        } catch (EnigmaException excp) {
+            reply(channel, charset, excp.getMessage());
+        } catch (RuntimeException excp) {
+            reply(channel, charset, excp.toString());
+        } finally {
+            try {
+                channel.close();
+            } catch (IOException excp) {
+                /* Ignore. */
+            }
+        }
+    }
+
+    /** Send "Error: " and MSG as a line on CHANNEL, encoded with
+     *  CHARSET, unless the client has gone. */
+    private static void reply(SocketChannel channel, Charset charset,
+                              String msg) {
+        try {
+            channel.write(charset.encode("Error: " + msg
+                                         + System.lineSeparator()));
+        } catch (IOException excp) {
+            /* The client has gone. */
+        }
+    }
+
+    /** Return the session named ID, creating it if needed, and making it
+     *  the most recently attached.  Sweeps if I then keep more than
+     *  MAX_SESSIONS sessions. */
+    private Session session(String id) {
+        Session session = _sessions.computeIfAbsent(id, k -> new Session());
+        session.lastAttached = _attachments.incrementAndGet();
+        if (_sessions.size() > MAX_SESSIONS) {
+            sweep();
+        }
+        return session;
+    }
+
+    /** Forget the least recently attached sessions until SWEEP_TARGET
+     *  remain.  Only one thread sweeps at a time; others attaching
+     *  meanwhile do not wait for it.  Sweeping to well below
+     *  MAX_SESSIONS makes its cost, a sort of the sessions, small when
+     *  spread over the attachments between sweeps. */
+    private void sweep() {
+        if (!_sweeping.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            ArrayList<Map.Entry<String, Session>> entries =
+                new ArrayList<>(_sessions.entrySet());
+            entries.sort(Comparator.comparingLong(e -> e.getValue()
+                                                  .lastAttached));
+            for (int i = 0; i < entries.size() - SWEEP_TARGET; i += 1) {
+                Map.Entry<String, Session> e = entries.get(i);
+                _sessions.remove(e.getKey(), e.getValue());
+            }
+        } finally {
+            _sweeping.set(false);
+        }
+    }
+
+    /** Return the number of sessions that I keep. */
+    int sessions() {
+        return _sessions.size();
+    }
+
+    /** Convert the LEN characters of SRC starting at START using M,
+     *  placing the result in DST and returning its length. */
+    private static int convert(Machine m, char[] src, int start, int len,
+                               char[] dst) {
+        if (m == null) {
+            throw error("no settings line before message");
+        }
+        return m.convert(src, start, len, dst, 0);
+    }
+
+    /** Return the lock guarding the session named ID. */
+    private ReentrantLock stripe(String id) {
+        int h = id.hashCode();
+        return _stripes[(h ^ (h >>> 16)) & (STRIPES - 1)];
+    }
+
+    /** Number of locks guarding sessions. */
+    private static final int STRIPES = 64;
+
+    /** Greatest number of sessions kept.  Attaching to a new session
+     *  beyond this forgets the least recently attached sessions, down to
+     *  SWEEP_TARGET, though connections already attached to them keep
+     *  their machines. */
+    static final int MAX_SESSIONS = 4096;
+
+    /** Number of sessions kept after a sweep. */
+    static final int SWEEP_TARGET = MAX_SESSIONS * 3 / 4;
+
+    /** Size of the buffers of each connection's reader and writer.  Lines
+     *  longer than this grow the reader's buffer. */
+    private static final int CONNECTION_BUFFER = 1 << 10;
+
+    /** Time to pause after failing to accept a connection. */
+    private static final long ACCEPT_RETRY_MILLIS = 100;
+
+    /** Mask of the file type bits of a Unix file mode, and the type of a
+     *  socket. */
+    private static final int S_IFMT = 0170000, S_IFSOCK = 0140000;
+
+    /** Catalogs by name. */
+    private final Map<String, Catalog> _catalogs;
+
+    /** Catalog used until a connection selects another. */
+    private final Catalog _default;
+
+    /** Named sessions. */
+    private final ConcurrentHashMap<String, Session> _sessions;
+
+    /** Number of attachments to sessions so far. */
+    private final AtomicLong _attachments = new AtomicLong();
+
+    /** True while a thread is sweeping _sessions. */
+    private final AtomicBoolean _sweeping = new AtomicBoolean();
+
+    /** Locks guarding the machines of sessions, selected by session
+     *  name. */
+    private final ReentrantLock[] _stripes;
+
+    /** Channel on which I accept connections. */
+    private final ServerSocketChannel _listener;
+
+    /** File of my Unix-domain socket, or null. */
+    private Path _socketFile;
+
+    /** Runs each connection. */
+    private final ExecutorService _workers;
+
+}
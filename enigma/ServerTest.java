@@ -0,0 +1,176 @@
+package enigma;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/** The suite of all JUnit tests for the Server class.
+ *  @author Edan Bash
+ */
+public class ServerTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(30);
+
+    /** Start a server on an ephemeral loopback port. */
+    @Before
+    public void start() throws IOException {
+        _config = File.createTempFile("config", ".conf");
+        _config.deleteOnExit();
+        Files.write(_config.toPath(), Arrays.asList(
+            "ABCDEFGHIJKLMNOPQRSTUVWXYZ",
+            " 4 3",
+            " I MQ      (AELTPHQXRU) (BKNW) (CMOY) (DFG) (IV) (JZ) (S)",
+            " II ME     (FIXVYOMW) (CDQJ) (EUSH) (BL) (ZAR) (GT) (KN) (P)",
+            " III MV    (ABDHPEJT) (CFLVMZOYQIRWUKXSG) (N)",
+            " B R       (AE) (BN) (CK) (DQ) (FU) (GY) (HW) (IJ) (LO) "
+            + "(MP) (RX) (SZ) (TV)"));
+        _catalogs = new LinkedHashMap<>();
+        _catalogs.put("config", new Server.Catalog(_config.getPath()));
+        _server = new Server(
+            new InetSocketAddress(InetAddress.getLoopbackAddress(), 0),
+            _catalogs);
+        _runner = new Thread(_server::run);
+        _runner.start();
+    }
+
+    /** Stop the server. */
+    @After
+    public void stop() throws InterruptedException {
+        _server.close();
+        _runner.join();
+    }
+
+    /** Send LINES on a new connection to the server, close the sending
+     *  side, and return the complete reply. */
+    private String send(String... lines) throws IOException {
+        try (SocketChannel channel = SocketChannel.open(_server.address())) {
+            channel.write(CHARSET.encode(String.join("\n", lines) + "\n"));
+            channel.shutdownOutput();
+            ByteArrayOutputStream reply = new ByteArrayOutputStream();
+            ByteBuffer buf = ByteBuffer.allocate(1024);
+            while (channel.read(buf) >= 0) {
+                reply.write(buf.array(), 0, buf.position());
+                buf.clear();
+            }
+            return new String(reply.toByteArray(), CHARSET);
+        }
+    }
+
+    /** Return what Main writes for input LINES with the configuration
+     *  that the server uses. */
+    private String expected(String... lines) {
+        Main config = new Main(_config.getPath());
+        Machine m = config.readConfig();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        GroupWriter writer = new GroupWriter(Channels.newChannel(out),
+                                             CHARSET);
+        byte[] in = (String.join("\n", lines) + "\n").getBytes(CHARSET);
+        new Main(config,
+                 new LineReader(Channels.newChannel(
+                     new ByteArrayInputStream(in)), CHARSET),
+                 writer).processLines(m);
+        writer.flush();
+        return new String(out.toByteArray(), CHARSET);
+    }
+
+    @Test
+    public void testConnection() throws IOException {
+        String[] lines = { "* B I II III AXL (AQ) (BC)", "HELLO WORLD", "",
+                           "* B III II I AAA", "FROM HIS SHOULDER HIAWATHA" };
+        assertEquals(expected(lines), send(lines));
+        assertEquals(expected(lines),
+                     send("@config", lines[0], lines[1], lines[2],
+                          lines[3], lines[4]));
+    }
+
+    @Test
+    public void testLongMessage() throws IOException {
+        StringBuilder msg = new StringBuilder();
+        for (int i = 0; i < 100000; i += 1) {
+            msg.append((char) ('A' + i % 26));
+        }
+        String[] lines = { "* B I II III AXL (AQ)", msg.toString(), "HI" };
+        assertEquals(expected(lines), send(lines));
+    }
+
+    @Test
+    public void testSession() throws IOException {
+        String settings = "* B I II III AXL (AQ)";
+        String whole = expected(settings, "HELLO WORLD", "GOODBYE");
+        String first = send("#s", settings, "HELLO WORLD");
+        String second = send("#s", "GOODBYE");
+        assertEquals(whole, first + second);
+        assertEquals(expected(settings, "GOODBYE"),
+                     send("#t", settings, "GOODBYE"));
+        assertEquals(2, _server.sessions());
+    }
+
+    @Test
+    public void testSessionBound() throws IOException {
+        String[] ids = new String[Server.MAX_SESSIONS + 2];
+        for (int i = 0; i < ids.length; i += 1) {
+            ids[i] = "#s" + i;
+        }
+        send(ids);
+        assertEquals(Server.SWEEP_TARGET + 1, _server.sessions());
+    }
+
+    @Test
+    public void testErrors() throws IOException {
+        assertTrue(send("* B").startsWith("Error: "));
+        assertTrue(send("HELLO").startsWith("Error: "));
+        assertTrue(send("@nosuch").startsWith("Error: "));
+        String[] lines = { "* B I II III AXL", "HELLO" };
+        assertEquals(expected(lines), send(lines));
+    }
+
+    @Test
+    public void testNotSocket() throws IOException {
+        File file = File.createTempFile("server", ".sock");
+        file.deleteOnExit();
+        try {
+            new Server(UnixDomainSocketAddress.of(file.toPath()), _catalogs)
+                .close();
+            fail("overwrote a regular file");
+        } catch (EnigmaException excp) {
+            assertTrue(file.exists());
+        }
+    }
+
+    /** Character set used for connections. */
+    private static final Charset CHARSET = Charset.defaultCharset();
+
+    /** Configuration file of the server. */
+    private File _config;
+
+    /** Catalogs that the server serves. */
+    private Map<String, Server.Catalog> _catalogs;
+
+    /** The server under test. */
+    private Server _server;
+
+    /** Thread running the server. */
+    private Thread _runner;
+
+}
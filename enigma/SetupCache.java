@@ -0,0 +1,162 @@
+package enigma;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/** A bounded cache of configured machines, keyed by settings line, that
+ *  spares repeated settings lines the parsing and validation that
+ *  Main.setUp performs.  A cached machine is a template: it is never
+ *  run, but is copied into (or, if the rotors and plugboard already
+ *  match, its positions restored onto) the machine being set up, by
+ *  Machine.setUpLike.  The cache holds templates up to an estimated
+ *  number of bytes, evicting the least recently used first.  It may be
+ *  used by several threads at once.
+ *  @author Edan Bash
+ */
+final class SetupCache {
+
+    /** A cache holding templates of up to about BUDGET bytes. */
+    SetupCache(long budget) {
+        _budget = budget;
+        _entries = new LinkedHashMap<>(INITIAL_CAPACITY, LOAD_FACTOR, true);
+    }
+
+    /** Return the normal form of the settings line SETTINGS for a
+     *  machine with NUMROTORS slots: the line with the spaces between
+     *  and within its plugboard cycles removed, so that lines that
+     *  Main.setUp treats alike have the same key.  The plugboard cycles
+     *  are the space-separated fields after the "*", the rotor names, the
+     *  rotor settings and any ring settings. */
+    static String key(String settings, int numRotors) {
+        int plugs = 0;
+        for (int k = 0; k < numRotors + 2 && plugs >= 0; k += 1) {
+            plugs = skipField(settings, plugs);
+        }
+        if (plugs >= 0 && plugs < settings.length()
+            && settings.charAt(plugs) != '(') {
+            plugs = skipField(settings, plugs);
+        }
+        if (plugs < 0 || settings.indexOf(' ', plugs) < 0) {
+            return settings;
+        }
+        StringBuilder result = new StringBuilder(settings.length());
+        result.append(settings, 0, plugs);
+        for (int i = plugs; i < settings.length(); i += 1) {
+            char c = settings.charAt(i);
+            if (c != ' ') {
+                result.append(c);
+            }
+        }
+        return result.toString();
+    }
+
+    /** Return the index just after the first space in SETTINGS at or
+     *  after FROM, or -1 if there is none. */
+    private static int skipField(String settings, int from) {
+        int space = settings.indexOf(' ', from);
+        return space < 0 ? -1 : space + 1;
+    }
+
+    /** Return the template for the settings line with key KEY, or null
+     *  if there is none. */
+    synchronized Machine get(String key) {
+        Entry entry = _entries.get(key);
+        if (entry == null) {
+            _misses += 1;
+            return null;
+        }
+        _hits += 1;
+        return entry.template;
+    }
+
+    /** Record TEMPLATE, a machine configured by the settings line with
+     *  key KEY, which must not be changed afterwards.  Evicts the least
+     *  recently used templates while the cache exceeds its budget. */
+    synchronized void put(String key, Machine template) {
+        Entry entry = new Entry(template, size(key, template));
+        Entry old = _entries.put(key, entry);
+        if (old != null) {
+            _bytes -= old.bytes;
+        }
+        _bytes += entry.bytes;
+        Iterator<Entry> eldest = _entries.values().iterator();
+        while (_bytes > _budget && eldest.hasNext()) {
+            _bytes -= eldest.next().bytes;
+            eldest.remove();
+        }
+    }
+
+    /** Return the number of templates held. */
+    synchronized int size() {
+        return _entries.size();
+    }
+
+    /** Return the estimated number of bytes held. */
+    synchronized long bytes() {
+        return _bytes;
+    }
+
+    /** Return the number of lookups that found a template. */
+    synchronized long hits() {
+        return _hits;
+    }
+
+    /** Return the number of lookups that found none. */
+    synchronized long misses() {
+        return _misses;
+    }
+
+    /** Return the estimated number of bytes held by the template
+     *  TEMPLATE under key KEY: the key, the machine and its rotor
+     *  copies, and the tables of its plugboard, which it alone uses. */
+    private static long size(String key, Machine template) {
+        long n = template.alphabet().size();
+        long plugboard = 2 * 4 * n;
+        if (n * n <= Rotor.MAX_TABLE_SIZE) {
+            plugboard += 2 * 4 * n * n;
+        }
+        return ENTRY_OVERHEAD + 2L * key.length()
+            + template.numRotors() * ROTOR_OVERHEAD + 2 * 4 * n + plugboard;
+    }
+
+    /** A cached template and its estimated size. */
+    private static final class Entry {
+        /** An entry for TEMPLATE, of about BYTES bytes. */
+        Entry(Machine template, long bytes) {
+            this.template = template;
+            this.bytes = bytes;
+        }
+
+        /** The configured machine. */
+        private final Machine template;
+
+        /** Estimated size of template and key, in bytes. */
+        private final long bytes;
+    }
+
+    /** Estimated bytes of a cache entry, key and machine, excluding
+     *  their variable parts. */
+    private static final long ENTRY_OVERHEAD = 256;
+
+    /** Estimated bytes of a copied rotor. */
+    private static final long ROTOR_OVERHEAD = 48;
+
+    /** Initial capacity of _entries. */
+    private static final int INITIAL_CAPACITY = 64;
+
+    /** Load factor of _entries. */
+    private static final float LOAD_FACTOR = 0.75f;
+
+    /** Bound on the estimated bytes held. */
+    private final long _budget;
+
+    /** Templates by key, least recently used first. */
+    private final LinkedHashMap<String, Entry> _entries;
+
+    /** Estimated bytes held. */
+    private long _bytes;
+
+    /** Number of lookups that found a template, and that found none. */
+    private long _hits, _misses;
+
+}
@@ -0,0 +1,131 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+/** The suite of all JUnit tests for the SetupCache class and its use by
+ *  Main.setUp.
+ *  @author Edan Bash
+ */
+public class SetupCacheTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /** A message to convert. */
+    private static final String MSG =
+        "FROMHISSHOULDERHIAWATHATOOKTHECAMERAOFROSEWOOD";
+
+    /** Return a Main reading a four-slot configuration with rotors I-IV
+     *  and reflector B from a temporary file. */
+    private Main main() throws IOException {
+        File file = File.createTempFile("config", ".conf");
+        file.deleteOnExit();
+        Files.write(file.toPath(), Arrays.asList(
+            "ABCDEFGHIJKLMNOPQRSTUVWXYZ",
+            " 4 3",
+            " I MQ      (AELTPHQXRU) (BKNW) (CMOY) (DFG) (IV) (JZ) (S)",
+            " II ME     (FIXVYOMW) (CDQJ) (EUSH) (BL) (ZAR) (GT) (KN) (P)",
+            " III MV    (ABDHPEJT) (CFLVMZOYQIRWUKXSG) (N)",
+            " IV MJ     (AEPLIYWCOXMRFZBSTGJQNH) (DV) (KU)",
+            " B R       (AE) (BN) (CK) (DQ) (FU) (GY) (HW) (IJ) (LO) (MP) "
+            + "(RX) (SZ) (TV)"));
+        return new Main(file.getPath());
+    }
+
+    @Test
+    public void testKey() {
+        assertEquals("* B I II III ABC (AB)(CD)",
+                     SetupCache.key("* B I II III ABC (AB) (CD)", 4));
+        assertEquals("* B I II III ABC (AB)(CD)",
+                     SetupCache.key("* B I II III ABC (AB)  (CD)", 4));
+        assertEquals("* B I II III ABC XYZ (AB)(CD)",
+                     SetupCache.key("* B I II III ABC XYZ (AB) (CD)", 4));
+        assertEquals("* B I II III ABC XYZ",
+                     SetupCache.key("* B I II III ABC XYZ", 4));
+        assertEquals("* B I II III ABC",
+                     SetupCache.key("* B I II III ABC", 4));
+        assertEquals("* B I", SetupCache.key("* B I", 4));
+        assertNotEquals(SetupCache.key("* B I II III ABC (AB)", 4),
+                        SetupCache.key("* B I II III ABD (AB)", 4));
+    }
+
+    @Test
+    public void testEviction() throws IOException {
+        Machine m = main().readConfig();
+        m.insertRotors(new String[] {"B", "I", "II", "III"});
+        m.setPlugboard(new Permutation("", m.alphabet()));
+        SetupCache cache = new SetupCache(1);
+        cache.put("a", m.copy());
+        assertEquals(0, cache.size());
+        cache = new SetupCache(1 << 20);
+        cache.put("a", m.copy());
+        long each = cache.bytes();
+        assertTrue(each > 0);
+        cache = new SetupCache(2 * each);
+        cache.put("a", m.copy());
+        cache.put("b", m.copy());
+        assertNotNull(cache.get("a"));
+        cache.put("c", m.copy());
+        assertEquals(2, cache.size());
+        assertNotNull(cache.get("a"));
+        assertNull(cache.get("b"));
+        assertNotNull(cache.get("c"));
+        assertEquals(3, cache.hits());
+        assertEquals(1, cache.misses());
+        assertEquals(2 * each, cache.bytes());
+    }
+
+    @Test
+    public void testRepeatedSetUp() throws IOException {
+        Main main = main();
+        Machine m = main.readConfig();
+        String line = "* B IV II I AXL BCD (YF) (ZH)";
+        main.setUp(m, line);
+        String first = m.convert(MSG);
+        Rotor[] rotors = m.activeRotors().clone();
+        main.setUp(m, line);
+        assertArrayEquals(rotors, m.activeRotors());
+        assertEquals(first, m.convert(MSG));
+        main.setUp(m, "* B IV II I AXL BCD (YF)  (ZH)");
+        assertArrayEquals(rotors, m.activeRotors());
+        assertEquals(first, m.convert(MSG));
+
+        Machine other = m.copy();
+        main.setUp(other, "* B III II I ZZZ");
+        main.setUp(other, line);
+        assertEquals(first, other.convert(MSG));
+        Main uncached = main();
+        Machine fresh = uncached.readConfig();
+        uncached.setUp(fresh, line);
+        assertEquals(first, fresh.convert(MSG));
+
+        main.setUp(m, "* B III II I ZZZ");
+        String second = m.convert(MSG);
+        main.setUp(m, line);
+        assertEquals(first, m.convert(MSG));
+        main.setUp(m, "* B III II I ZZZ");
+        assertEquals(second, m.convert(MSG));
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testBadLineNotCached() throws IOException {
+        Main main = main();
+        Machine m = main.readConfig();
+        try {
+            main.setUp(m, "* B IV II V AXL");
+        } catch (EnigmaException excp) {
+            /* Expected; try again. */
+        }
+        main.setUp(m, "* B IV II V AXL");
+    }
+
+}
@@ -0,0 +1,373 @@
+package enigma;
+
+import java.util.Arrays;
+
+/** Calculates, in closed form, where the moving rotors of a machine will
+ *  be after a given number of keypresses.
+ *
+ *  The moving rotors are treated as levels, numbered from 0 (the
+ *  leftmost moving rotor) to P - 1 (the rightmost).  The rightmost
+ *  rotor steps on every keypress, so the keypresses at which it is at a
+ *  notch (its "carries") recur with the period of its alphabet.  A
+ *  middle rotor rests until the rotor to its right carries; whenever it
+ *  lands on one of its own notches it steps again on the very next
+ *  keypress (the double step), carrying into the rotor to its left as
+ *  it does so.  The leftmost moving rotor simply counts the carries of
+ *  the rotor to its right.  Each level can therefore count its carries,
+ *  and find the time of its Cth carry, using only the corresponding
+ *  functions of the level to its right, so that positions follow in
+ *  time independent of the number of keypresses.
+ *
+ *  This reasoning assumes that a middle rotor never receives a carry
+ *  while it is stepping off its own notches.  For rotor and notch
+ *  layouts in which that can happen (e.g., adjacent notches on
+ *  neighbouring rotors) the positions are found instead by stepping
+ *  until the machine's positions repeat.
+ *  @author Edan Bash
+ */
+final class Stepping {
+
+    /** A calculator for the moving rotors of ROTORS, the rotors in the
+     *  slots of a machine with PAWLS pawls, in their current ring
+     *  settings. */
+    Stepping(Rotor[] rotors, int pawls) {
+        _rotors = rotors.clone();
+        _levels = pawls;
+        _first = rotors.length - pawls;
+        _size = rotors[rotors.length - 1].size();
+        _rings = new int[rotors.length];
+        for (int i = 0; i < rotors.length; i += 1) {
+            _rings[i] = rotors[i].ringSetting();
+        }
+        _start = new int[pawls];
+        _notchCount = new int[pawls];
+        _notchPrefix = new int[pawls][];
+        _notchList = new int[pawls][];
+        _nextNotch = new int[pawls][];
+        _restCount = new int[pawls];
+        _restList = new int[pawls][];
+        _restIndex = new int[pawls][];
+        _selfPrefix = new int[pawls][];
+        _slideOf = new int[pawls][];
+        if (pawls > 0) {
+            tabulateRightmost(pawls - 1);
+        }
+        for (int j = 1; j < pawls - 1; j += 1) {
+            tabulateMiddle(j);
+        }
+        _regular = regular();
+    }
+
+    /** Returns true iff I describe the rotors ROTORS in their current
+     *  ring settings. */
+    boolean matches(Rotor[] rotors) {
+        if (rotors.length != _rotors.length) {
+            return false;
+        }
+        for (int i = 0; i < rotors.length; i += 1) {
+            if (rotors[i] != _rotors[i]
+                || rotors[i].ringSetting() != _rings[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Set the rotors of M, which must be those I describe, to their
+     *  settings after N more keypresses. */
+    void advance(Machine m, long n) {
+        if (!_regular) {
+            advanceByCycle(m, n);
+            return;
+        }
+        while (n > 0 && !settled()) {
+            m.advanceRotors();
+            n -= 1;
+        }
+        if (n == 0) {
+            return;
+        }
+        for (int j = 0; j < _levels; j += 1) {
+            _start[j] = _rotors[_first + j].setting();
+        }
+        for (int j = 0; j < _levels; j += 1) {
+            _rotors[_first + j].set(position(j, n));
+        }
+    }
+
+    /** Return the setting of level J after N keypresses. */
+    private int position(int j, long n) {
+        int x = _start[j];
+        if (j == _levels - 1) {
+            return (int) ((x + n) % _size);
+        }
+        long c = carries(j + 1, n);
+        if (j == 0 || _restCount[j] == _size) {
+            return (int) ((x + c) % _size);
+        }
+        if (c == 0) {
+            return x;
+        }
+        int a = _restIndex[j][x] + (int) ((c - 1) % _restCount[j]);
+        int gap = _restList[j][a + 1] - _restList[j][a];
+        long progress = Math.min(n - carryTime(j + 1, c) + 1, gap);
+        return (int) ((_restList[j][a] + progress) % _size);
+    }
+
+    /** Return the number of the first N keypresses at which level J is at
+     *  a notch. */
+    private long carries(int j, long n) {
+        int x = _start[j];
+        if (j == _levels - 1) {
+            int rem = (int) (n % _size);
+            return (n / _size) * _notchCount[j]
+                + _notchPrefix[j][x + rem] - _notchPrefix[j][x];
+        }
+        if (_restCount[j] == _size) {
+            return 0;
+        }
+        long c = carries(j + 1, n);
+        if (c == 0) {
+            return 0;
+        }
+        int k = _restCount[j];
+        int i = _restIndex[j][x];
+        long full = (c - 1) / k;
+        int a = i + (int) ((c - 1) % k);
+        int gap = _restList[j][a + 1] - _restList[j][a];
+        long progress = Math.min(n - carryTime(j + 1, c) + 1, gap);
+        return full * (_size - k) + _selfPrefix[j][a] - _selfPrefix[j][i]
+            + Math.max(0, progress - 1);
+    }
+
+    /** Return the keypress (numbering from 1) at which level J is at a
+     *  notch for the Cth time (C >= 1). */
+    private long carryTime(int j, long c) {
+        int x = _start[j];
+        if (j == _levels - 1) {
+            int t = _notchCount[j];
+            long q = (c - 1) / t;
+            int r = (int) ((c - 1) % t);
+            return q * _size + _notchList[j][_nextNotch[j][x] + r] - x + 1;
+        }
+        int k = _restCount[j];
+        int notches = _size - k;
+        int i = _restIndex[j][x];
+        long q = (c - 1) / notches;
+        int v = _selfPrefix[j][i] + (int) ((c - 1) % notches);
+        int a = _slideOf[j][v];
+        return carryTime(j + 1, q * k + (a - i) + 1) + 1
+            + (v - _selfPrefix[j][a]);
+    }
+
+    /** Fill in the notch tables for the rightmost level, J. */
+    private void tabulateRightmost(int j) {
+        Rotor r = _rotors[_first + j];
+        int n = _size;
+        int[] prefix = new int[2 * n + 1];
+        int[] list = new int[2 * n];
+        int count = 0;
+        for (int s = 0; s < 2 * n; s += 1) {
+            prefix[s + 1] = prefix[s];
+            if (r.atNotch(s % n)) {
+                prefix[s + 1] += 1;
+                list[count] = s;
+                count += 1;
+            }
+        }
+        _notchCount[j] = count / 2;
+        _notchPrefix[j] = prefix;
+        _notchList[j] = Arrays.copyOf(list, count);
+        _nextNotch[j] = new int[n];
+        for (int x = 0, a = 0; x < n; x += 1) {
+            while (a < count && list[a] < x) {
+                a += 1;
+            }
+            _nextNotch[j][x] = a;
+        }
+    }
+
+    /** Fill in the resting-position tables for middle level J. */
+    private void tabulateMiddle(int j) {
+        Rotor r = _rotors[_first + j];
+        int n = _size;
+        int[] rest = new int[2 * n + 1];
+        int k = 0;
+        int[] index = new int[n];
+        Arrays.fill(index, -1);
+        for (int s = 0; s < n; s += 1) {
+            if (!r.atNotch(s)) {
+                index[s] = k;
+                rest[k] = s;
+                k += 1;
+            }
+        }
+        _restCount[j] = k;
+        _restIndex[j] = index;
+        if (k == 0 || k == n) {
+            return;
+        }
+        for (int a = 0; a <= k; a += 1) {
+            rest[k + a] = rest[a] + n;
+        }
+        int[] prefix = new int[2 * k + 1];
+        int[] slideOf = new int[2 * (n - k)];
+        for (int a = 0; a < 2 * k; a += 1) {
+            int self = rest[a + 1] - rest[a] - 1;
+            for (int v = prefix[a]; v < prefix[a] + self; v += 1) {
+                slideOf[v] = a;
+            }
+            prefix[a + 1] = prefix[a] + self;
+        }
+        _restList[j] = Arrays.copyOf(rest, 2 * k + 1);
+        _selfPrefix[j] = prefix;
+        _slideOf[j] = slideOf;
+    }
+
+    /** Returns true iff no middle level can be carried into while it is
+     *  stepping off its own notches, and every middle level has a
+     *  resting position. */
+    private boolean regular() {
+        if (_levels < 3) {
+            return true;
+        }
+        int right = _levels - 1;
+        long gap;
+        if (_notchCount[right] == 0) {
+            gap = Long.MAX_VALUE;
+        } else {
+            gap = _size;
+            int[] list = _notchList[right];
+            for (int a = 0; a + 1 < list.length; a += 1) {
+                gap = Math.min(gap, list[a + 1] - list[a]);
+            }
+        }
+        for (int j = _levels - 2; j >= 1; j -= 1) {
+            int k = _restCount[j];
+            if (k == 0) {
+                return false;
+            }
+            if (k == _size) {
+                gap = Long.MAX_VALUE;
+                continue;
+            }
+            int maxSelf = 0;
+            for (int a = 0; a < k; a += 1) {
+                maxSelf = Math.max(maxSelf, _restList[j][a + 1]
+                                   - _restList[j][a] - 1);
+            }
+            if (maxSelf >= gap) {
+                return false;
+            }
+            gap = maxSelf > 1 ? 1 : gap + 1 - maxSelf;
+        }
+        return true;
+    }
+
+    /** Returns true iff no middle level is at a notch. */
+    private boolean settled() {
+        for (int j = 1; j < _levels - 1; j += 1) {
+            if (_rotors[_first + j].atNotch()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Advance M by N keypresses by stepping until its moving rotors
+     *  return to a position they have held before, then skipping whole
+     *  cycles. */
+    private void advanceByCycle(Machine m, long n) {
+        long states = 1;
+        for (int j = 0; j < _levels && states <= MAX_POSITIONS; j += 1) {
+            states *= _size;
+        }
+        int[] seen = null;
+        if (states <= MAX_POSITIONS) {
+            seen = new int[(int) states];
+            Arrays.fill(seen, -1);
+        }
+        for (int count = 0; n > 0; count += 1) {
+            if (seen != null) {
+                int key = 0;
+                for (int j = 0; j < _levels; j += 1) {
+                    key = key * _size + _rotors[_first + j].setting();
+                }
+                if (seen[key] >= 0) {
+                    n %= count - seen[key];
+                    seen = null;
+                    if (n == 0) {
+                        return;
+                    }
+                } else {
+                    seen[key] = count;
+                }
+            }
+            m.advanceRotors();
+            n -= 1;
+        }
+    }
+
+    /** Largest number of moving rotor positions for which
+     *  advanceByCycle looks for repeated positions. */
+    private static final long MAX_POSITIONS = 1 << 24;
+
+    /** The rotors in the machine's slots. */
+    private final Rotor[] _rotors;
+
+    /** Ring settings of _rotors when I was built. */
+    private final int[] _rings;
+
+    /** Number of moving rotors. */
+    private final int _levels;
+
+    /** Slot of the leftmost moving rotor. */
+    private final int _first;
+
+    /** Size of the alphabet. */
+    private final int _size;
+
+    /** True iff the closed form applies to my rotors. */
+    private final boolean _regular;
+
+    /** Setting of each level before the keypresses being skipped. */
+    private final int[] _start;
+
+    /** Number of settings at which the rightmost level is at a notch. */
+    private final int[] _notchCount;
+
+    /** For the rightmost level, the number of notch settings below S,
+     *  counting settings over two turns, for 0 <= S <= 2 * size. */
+    private final int[][] _notchPrefix;
+
+    /** For the rightmost level, its notch settings over two turns, in
+     *  increasing order. */
+    private final int[][] _notchList;
+
+    /** For the rightmost level, the index in _notchList of the first
+     *  notch setting at or after each setting. */
+    private final int[][] _nextNotch;
+
+    /** For each middle level, the number of settings that are not
+     *  notches (its resting positions). */
+    private final int[] _restCount;
+
+    /** For each middle level, its resting positions over two turns in
+     *  increasing order, followed by the first resting position of a
+     *  third. */
+    private final int[][] _restList;
+
+    /** For each middle level, the index in _restList of each resting
+     *  position, or -1 for notch positions. */
+    private final int[][] _restIndex;
+
+    /** For each middle level, the number of self-steps (notch positions
+     *  passed) before the resting position with each index in
+     *  _restList. */
+    private final int[][] _selfPrefix;
+
+    /** For each middle level, the index in _restList of the resting
+     *  position from which each self-step is made. */
+    private final int[][] _slideOf;
+
+}
@@ -1,5 +1,6 @@
 package enigma;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 
 /** Utility definitions for use in unit tests.
@@ -39,6 +40,39 @@ class TestUtils {
                   + "(PW) (QZ) (SX) (UY)");
     }
 
+    /** The notches of the naval moving rotors. */
+    static final HashMap<String, String> NAVAL_NOTCHES = new HashMap<>();
+    static {
+        NAVAL_NOTCHES.put("I", "Q");
+        NAVAL_NOTCHES.put("II", "E");
+        NAVAL_NOTCHES.put("III", "V");
+        NAVAL_NOTCHES.put("IV", "J");
+        NAVAL_NOTCHES.put("V", "Z");
+        NAVAL_NOTCHES.put("VI", "ZM");
+        NAVAL_NOTCHES.put("VII", "ZM");
+        NAVAL_NOTCHES.put("VIII", "ZM");
+    }
+
+    /** Return an unconfigured machine over UPPER with NUMROTORS slots
+     *  and PAWLS pawls, whose available rotors are the naval rotors
+     *  NAMES in the A setting: reflectors B and C, fixed rotors Beta and
+     *  Gamma, and the others moving, with their notches. */
+    static Machine navalMachine(int numRotors, int pawls, String... names) {
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        for (String name : names) {
+            Permutation perm = new Permutation(NAVALA.get(name), UPPER);
+            if (name.equals("B") || name.equals("C")) {
+                rotors.add(new Reflector(name, perm));
+            } else if (NAVAL_NOTCHES.containsKey(name)) {
+                rotors.add(new MovingRotor(name, perm,
+                                           NAVAL_NOTCHES.get(name)));
+            } else {
+                rotors.add(new FixedRotor(name, perm));
+            }
+        }
+        return new Machine(UPPER, numRotors, pawls, rotors);
+    }
+
     /** The mapping of the upper-case alphabet by NAVALA. */
     static final HashMap<String, String> NAVALA_MAP = new HashMap<>();
     static {
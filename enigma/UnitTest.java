@@ -11,7 +11,23 @@ public class UnitTest {
      *  the arguments of runClasses to run other JUnit tests. */
     public static void main(String[] ignored) {
         System.exit(textui.runClasses(PermutationTest.class,
-                                      MovingRotorTest.class));
+                                      MovingRotorTest.class,
+                                      AlphabetTest.class,
+                                      MachineTest.class,
+                                      KeystreamTest.class,
+                                      ConfigImageTest.class,
+                                      BombeTest.class,
+                                      CoincidenceSearchTest.class,
+                                      PlugboardSolverTest.class,
+                                      BatchTest.class,
+                                      SetupCacheTest.class,
+                                      MetricsTest.class,
+                                      PipelineTest.class,
+                                      FileBatchTest.class,
+                                      LineReaderTest.class,
+                                      GroupWriterTest.class,
+                                      ServerTest.class,
+                                      ParallelTest.class));
     }
 
 }
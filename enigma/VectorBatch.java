@@ -0,0 +1,131 @@
+package enigma;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/** A batch of machines that converts as many lanes at once as fit in the
+ *  platform's preferred vector of ints, using the (incubating) Vector
+ *  API.  The settings of each slot for consecutive lanes are loaded as a
+ *  vector and stepped together under masks computed from the rotors'
+ *  notch tables.  Each rotor then converts all lanes with one gather
+ *  from its offset table, indexed by setting times alphabet size plus
+ *  input.  This class requires the jdk.incubator.vector module both to
+ *  compile and to run; Batch.create falls back to Batch without it.
+ *  @author Edan Bash
+ */
+final class VectorBatch extends Batch {
+
+    /** A batch of LANES machines, each with the rotors, ring settings,
+     *  rotor settings and plugboard of MACHINE, whose alphabet must be
+     *  small enough for its rotors' offset tables. */
+    VectorBatch(Machine machine, int lanes) {
+        super(machine, lanes, roundUp(lanes));
+        if ((long) _size * _size > Rotor.MAX_TABLE_SIZE) {
+            throw EnigmaException.error("alphabet too large for "
+                                        + "vector batches");
+        }
+        Rotor[] rotors = machine.activeRotors();
+        _forwardOffsets = new int[_slots][];
+        _inverseOffsets = new int[_slots][];
+        for (int j = 0; j < _slots; j += 1) {
+            _forwardOffsets[j] = rotors[j].permutation().forwardOffsets();
+            _inverseOffsets[j] = rotors[j].permutation().inverseOffsets();
+        }
+        _index = new int[SPECIES.length()];
+    }
+
+    /** Return LANES rounded up to a multiple of the vector length. */
+    private static int roundUp(int lanes) {
+        int width = SPECIES.length();
+        return (lanes + width - 1) / width * width;
+    }
+
+    @Override
+    void convert(int[] src, int off, int len, int[] dst) {
+        int width = SPECIES.length();
+        int last = _slots - 1;
+        int reflector = _reflector * _size;
+        for (int i = 0; i < len; i += 1) {
+            int in = _plugForward[src[off + i]];
+            int base = i * _lanes;
+            for (int l = 0; l < _lanes; l += width) {
+                advance(l);
+                IntVector x = IntVector.broadcast(SPECIES, in);
+                for (int j = last; j >= 1; j -= 1) {
+                    x = lookup(_forwardOffsets[j], row(j, l).add(x));
+                }
+                x = lookup(_forwardOffsets[0], x.add(reflector));
+                for (int j = 1; j <= last; j += 1) {
+                    x = lookup(_inverseOffsets[j], row(j, l).add(x));
+                }
+                x = lookup(_plugInverse, x);
+                if (l + width <= _lanes) {
+                    x.intoArray(dst, base + l);
+                } else {
+                    x.intoArray(dst, base + l,
+                                SPECIES.indexInRange(l, _lanes));
+                }
+            }
+        }
+    }
+
+    /** Advance the rotors of the vector of lanes starting at L for one
+     *  keypress, as Batch.advance advances one lane. */
+    private void advance(int l) {
+        int last = _slots - 1;
+        VectorMask<Integer> none = SPECIES.maskAll(false);
+        VectorMask<Integer> atNotch = atNotch(1, l);
+        for (int i = 1; i <= last; i += 1) {
+            VectorMask<Integer> rightAtNotch =
+                i < last ? atNotch(i + 1, l) : none;
+            IntVector s = IntVector.fromArray(SPECIES, _settings[i], l);
+            if (i == last) {
+                s = s.add(1);
+            } else {
+                VectorMask<Integer> move = none;
+                if (_rotates[i]) {
+                    move = move.or(rightAtNotch);
+                }
+                if (_rotates[i - 1]) {
+                    move = move.or(atNotch);
+                }
+                s = s.add(1, move);
+            }
+            s = s.blend(0, s.compare(VectorOperators.EQ, _size));
+            s.intoArray(_settings[i], l);
+            atNotch = rightAtNotch;
+        }
+    }
+
+    /** Return the mask of the lanes of the vector starting at L whose
+     *  rotor in slot J is at a notch. */
+    private VectorMask<Integer> atNotch(int j, int l) {
+        return IntVector.fromArray(SPECIES, _notches[j], 0, _settings[j], l)
+            .compare(VectorOperators.NE, 0);
+    }
+
+    /** Return the starts of the rows of the offset tables of the rotor in
+     *  slot J for the settings of the vector of lanes starting at L. */
+    private IntVector row(int j, int l) {
+        return IntVector.fromArray(SPECIES, _settings[j], l).mul(_size);
+    }
+
+    /** Return the elements of TABLE at INDEX. */
+    private IntVector lookup(int[] table, IntVector index) {
+        index.intoArray(_index, 0);
+        return IntVector.fromArray(SPECIES, table, 0, _index, 0);
+    }
+
+    /** Vector shape used for lanes. */
+    private static final VectorSpecies<Integer> SPECIES =
+        IntVector.SPECIES_PREFERRED;
+
+    /** Forward and inverse offset tables of the rotor in each slot. */
+    private final int[][] _forwardOffsets, _inverseOffsets;
+
+    /** Indices of a gather. */
+    private final int[] _index;
+
+}